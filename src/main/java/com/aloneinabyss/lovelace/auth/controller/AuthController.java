@@ -2,10 +2,11 @@ package com.aloneinabyss.lovelace.auth.controller;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
-import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -21,9 +22,11 @@ import com.aloneinabyss.lovelace.auth.dto.RegisterRequest;
 import com.aloneinabyss.lovelace.auth.dto.RegisterResponse;
 import com.aloneinabyss.lovelace.auth.dto.ResendVerificationRequest;
 import com.aloneinabyss.lovelace.auth.dto.ResetPasswordRequest;
+import com.aloneinabyss.lovelace.auth.dto.SessionResponse;
 import com.aloneinabyss.lovelace.auth.service.AuthService;
 import com.aloneinabyss.lovelace.config.JwtProperties;
 import com.aloneinabyss.lovelace.security.CookieUtil;
+import com.aloneinabyss.lovelace.security.ParsedToken;
 import com.aloneinabyss.lovelace.security.SecurityUtils;
 import com.aloneinabyss.lovelace.shared.exception.AuthenticationException;
 import com.aloneinabyss.lovelace.shared.exception.ErrorCode;
@@ -34,6 +37,8 @@ import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 
+import java.util.List;
+
 @RestController
 @RequestMapping("/api/auth")
 @RequiredArgsConstructor
@@ -124,16 +129,16 @@ public class AuthController {
             @Valid @RequestBody ChangePasswordRequest request,
             HttpServletResponse httpResponse
     ) {
-        // Get the authenticated username from SecurityContext
-        String username = SecurityUtils.getCurrentUsername();
-        if (username == null) {
+        // Get the authenticated user id from SecurityContext
+        String userId = SecurityUtils.getCurrentUserId();
+        if (userId == null) {
             throw new AuthenticationException(
                 ErrorCode.AUTHENTICATION_REQUIRED
             );
         }
         
         // Change the password
-        authService.changePassword(username, request.getCurrentPassword(), request.getNewPassword());
+        authService.changePassword(userId, request.getCurrentPassword(), request.getNewPassword());
         
         // Delete the refresh token cookie
         cookieUtil.deleteRefreshTokenCookie(httpResponse);
@@ -145,17 +150,13 @@ public class AuthController {
     
     @PostMapping("/logout")
     public ResponseEntity<MessageResponse> logout(
-            @RequestHeader("Authorization") String authHeader,
             HttpServletRequest httpRequest,
             HttpServletResponse httpResponse
     ) {
-        // Extract access token from Authorization header
-        String accessToken = null;
-        if (authHeader != null && authHeader.startsWith("Bearer ")) {
-            accessToken = authHeader.substring(7).trim();
-        }
+        // Reuse the access token already verified by JwtAuthenticationFilter
+        ParsedToken accessToken = (ParsedToken) httpRequest.getAttribute(ParsedToken.REQUEST_ATTRIBUTE);
         
-        if (accessToken == null || accessToken.isEmpty()) {
+        if (accessToken == null) {
             return ResponseEntity.badRequest().body(MessageResponse.builder()
                 .message(messageService.getMessage("auth.logout.no.token"))
                 .build());
@@ -176,4 +177,57 @@ public class AuthController {
             .build());
     }
     
+    @PostMapping("/logout-all")
+    public ResponseEntity<MessageResponse> logoutAll(HttpServletResponse httpResponse) {
+        String userId = SecurityUtils.getCurrentUserId();
+        if (userId == null) {
+            throw new AuthenticationException(
+                ErrorCode.AUTHENTICATION_REQUIRED
+            );
+        }
+        
+        // Revoke every access and refresh token issued to the user so far
+        authService.logoutEverywhere(userId);
+        
+        // Delete the refresh token cookie
+        cookieUtil.deleteRefreshTokenCookie(httpResponse);
+        
+        return ResponseEntity.ok(MessageResponse.builder()
+            .message(messageService.getMessage("auth.logout.all.success"))
+            .build());
+    }
+    
+    @GetMapping("/sessions")
+    public ResponseEntity<List<SessionResponse>> listSessions(HttpServletRequest httpRequest) {
+        String userId = SecurityUtils.getCurrentUserId();
+        if (userId == null) {
+            throw new AuthenticationException(
+                ErrorCode.AUTHENTICATION_REQUIRED
+            );
+        }
+        
+        // Mark the session of the access token used for this request
+        ParsedToken accessToken = (ParsedToken) httpRequest.getAttribute(ParsedToken.REQUEST_ATTRIBUTE);
+        String currentSessionId = accessToken != null ? accessToken.getSessionId() : null;
+        
+        return ResponseEntity.ok(authService.listSessions(userId, currentSessionId));
+    }
+    
+    @DeleteMapping("/sessions/{sessionId}")
+    public ResponseEntity<MessageResponse> revokeSession(@PathVariable String sessionId) {
+        String userId = SecurityUtils.getCurrentUserId();
+        if (userId == null) {
+            throw new AuthenticationException(
+                ErrorCode.AUTHENTICATION_REQUIRED
+            );
+        }
+        
+        // Only sessions of the current user can be found, so no further ownership check is needed
+        authService.revokeSession(userId, sessionId);
+        
+        return ResponseEntity.ok(MessageResponse.builder()
+            .message(messageService.getMessage("auth.session.revoked"))
+            .build());
+    }
+    
 }
@@ -0,0 +1,52 @@
+package com.aloneinabyss.lovelace.auth.controller;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.aloneinabyss.lovelace.auth.dto.MessageResponse;
+import com.aloneinabyss.lovelace.security.service.RevocationEpochService;
+import com.aloneinabyss.lovelace.shared.service.MessageService;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Administrative endpoints for mass session revocation.
+ * Each call records a revocation epoch; no per-token writes are made.
+ */
+@RestController
+@RequestMapping("/api/admin/revocations")
+@PreAuthorize("hasRole('ADMIN')")
+@RequiredArgsConstructor
+public class RevocationController {
+    
+    private final RevocationEpochService revocationEpochService;
+    private final MessageService messageService;
+    
+    @PostMapping("/users/{userId}")
+    public ResponseEntity<MessageResponse> revokeUser(@PathVariable String userId) {
+        revocationEpochService.revokeUser(userId);
+        return revoked();
+    }
+    
+    @PostMapping("/roles/{role}")
+    public ResponseEntity<MessageResponse> revokeRole(@PathVariable String role) {
+        revocationEpochService.revokeRole(role);
+        return revoked();
+    }
+    
+    @PostMapping("/global")
+    public ResponseEntity<MessageResponse> revokeAll() {
+        revocationEpochService.revokeAll();
+        return revoked();
+    }
+    
+    private ResponseEntity<MessageResponse> revoked() {
+        return ResponseEntity.ok(MessageResponse.builder()
+            .message(messageService.getMessage("auth.revocation.success"))
+            .build());
+    }
+}
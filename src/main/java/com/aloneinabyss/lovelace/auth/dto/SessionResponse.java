@@ -0,0 +1,34 @@
+package com.aloneinabyss.lovelace.auth.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Response DTO describing one live session (a login and the tokens rotated from it).
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SessionResponse {
+    
+    /**
+     * Session id, used to revoke the session
+     */
+    private String sessionId;
+    
+    /**
+     * When the session ends unless its refresh token is used before
+     */
+    private LocalDateTime expiresAt;
+    
+    /**
+     * Whether this is the session of the request's access token
+     */
+    private boolean current;
+
+}
@@ -0,0 +1,56 @@
+package com.aloneinabyss.lovelace.auth.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Single-use token sent by email, e.g. to verify an address or reset a password.
+ * Only the SHA-256 hash of the token is stored, as the document id, so a lookup is a
+ * primary key match and a leaked collection does not reveal usable tokens.
+ * MongoDB removes expired tokens on its own through the TTL index on expiresAt.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "one_time_tokens")
+@CompoundIndex(name = OneTimeToken.USER_PURPOSE_INDEX, def = "{ 'userId': 1, 'purpose': 1 }", unique = true)
+public class OneTimeToken {
+    
+    /**
+     * Name of the unique index on user and purpose: a user holds at most one token per purpose
+     */
+    public static final String USER_PURPOSE_INDEX = "user_purpose_unique";
+    
+    /**
+     * SHA-256 hash of the token, base64url encoded
+     */
+    @Id
+    private String id;
+    
+    private Purpose purpose;
+    
+    private String userId;
+    
+    private LocalDateTime createdAt;
+    
+    /**
+     * The TTL monitor deletes the token once this instant has passed. It only runs
+     * once a minute, so queries must still check the expiry themselves.
+     */
+    @Indexed(name = "expiresAt_ttl", expireAfter = "0s")
+    private LocalDateTime expiresAt;
+    
+    public enum Purpose {
+        EMAIL_VERIFICATION,
+        PASSWORD_RESET
+    }
+}
@@ -19,29 +19,42 @@ import java.util.Set;
 @Document(collection = "users")
 public class User {
     
+    /**
+     * Name of the unique index on username; identifies username conflicts in duplicate-key errors
+     */
+    public static final String USERNAME_INDEX = "username_unique";
+    
+    /**
+     * Name of the unique index on email; identifies email conflicts in duplicate-key errors
+     */
+    public static final String EMAIL_INDEX = "email_unique";
+    
+    /**
+     * Collation of the unique indexes: comparisons ignore case, so "Ada" and "ada" conflict.
+     * Queries on username or email must use the same collation, otherwise MongoDB cannot use the indexes.
+     */
+    public static final String CASE_INSENSITIVE = "{ 'locale': 'en', 'strength': 2 }";
+    
     @Id
     private String id;
     
-    @Indexed(unique = true)
+    @Indexed(name = USERNAME_INDEX, unique = true, collation = CASE_INSENSITIVE)
     private String username;
     
-    @Indexed(unique = true)
+    @Indexed(name = EMAIL_INDEX, unique = true, collation = CASE_INSENSITIVE)
     private String email;
 
     private boolean emailVerified;
 
-    private String emailVerificationToken;
-    
-    private LocalDateTime emailVerificationTokenExpiry;
-    
     private String password;
     
-    private String passwordResetToken;
-    
-    private LocalDateTime passwordResetTokenExpiry;
-    
     private LocalDateTime passwordChangedAt;
     
+    /**
+     * Incremented whenever the credentials change; tokens carrying an older version are rejected
+     */
+    private long credentialVersion;
+    
     @Builder.Default
     private Set<String> roles = new HashSet<>();
     
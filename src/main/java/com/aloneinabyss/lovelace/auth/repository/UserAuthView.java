@@ -0,0 +1,26 @@
+package com.aloneinabyss.lovelace.auth.repository;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+/**
+ * Closed projection of {@link com.aloneinabyss.lovelace.auth.model.User} holding only the fields
+ * needed to authenticate a request. Queries returning it fetch just these fields, leaving the
+ * password hash, one-time tokens and audit timestamps on the server.
+ */
+public interface UserAuthView {
+    
+    String getId();
+    
+    String getUsername();
+    
+    String getEmail();
+    
+    Set<String> getRoles();
+    
+    boolean isEnabled();
+    
+    LocalDateTime getPasswordChangedAt();
+    
+    long getCredentialVersion();
+}
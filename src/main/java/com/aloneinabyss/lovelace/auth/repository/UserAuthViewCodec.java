@@ -0,0 +1,88 @@
+package com.aloneinabyss.lovelace.auth.repository;
+
+import lombok.Value;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Hand-written BSON codec for the {@link UserAuthView} projection.
+ * Reads the projected fields of a user document into an immutable view; any other field is skipped.
+ */
+public class UserAuthViewCodec implements Codec<UserAuthView> {
+    
+    @Override
+    public void encode(BsonWriter writer, UserAuthView view, EncoderContext encoderContext) {
+        writer.writeStartDocument();
+        
+        if (view.getId() != null) {
+            UserCodec.writeId(writer, view.getId());
+        }
+        UserCodec.writeString(writer, "username", view.getUsername());
+        UserCodec.writeString(writer, "email", view.getEmail());
+        UserCodec.writeRoles(writer, view.getRoles());
+        writer.writeBoolean("enabled", view.isEnabled());
+        UserCodec.writeDateTime(writer, "passwordChangedAt", view.getPasswordChangedAt());
+        writer.writeInt64("credentialVersion", view.getCredentialVersion());
+        
+        writer.writeEndDocument();
+    }
+    
+    @Override
+    public UserAuthView decode(BsonReader reader, DecoderContext decoderContext) {
+        String id = null;
+        String username = null;
+        String email = null;
+        Set<String> roles = Collections.emptySet();
+        boolean enabled = false;
+        LocalDateTime passwordChangedAt = null;
+        long credentialVersion = 0;
+        
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            String name = reader.readName();
+            
+            if (reader.getCurrentBsonType() == BsonType.NULL) {
+                reader.readNull();
+                continue;
+            }
+            
+            switch (name) {
+                case "_id" -> id = UserCodec.readId(reader);
+                case "username" -> username = reader.readString();
+                case "email" -> email = reader.readString();
+                case "roles" -> roles = UserCodec.readRoles(reader);
+                case "enabled" -> enabled = reader.readBoolean();
+                case "passwordChangedAt" -> passwordChangedAt = UserCodec.readDateTime(reader);
+                case "credentialVersion" -> credentialVersion = UserCodec.readLong(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+        
+        return new DecodedUserAuthView(id, username, email, roles, enabled, passwordChangedAt, credentialVersion);
+    }
+    
+    @Override
+    public Class<UserAuthView> getEncoderClass() {
+        return UserAuthView.class;
+    }
+    
+    @Value
+    static class DecodedUserAuthView implements UserAuthView {
+        String id;
+        String username;
+        String email;
+        Set<String> roles;
+        boolean enabled;
+        LocalDateTime passwordChangedAt;
+        long credentialVersion;
+    }
+}
@@ -0,0 +1,146 @@
+package com.aloneinabyss.lovelace.auth.repository;
+
+import com.aloneinabyss.lovelace.auth.model.User;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.types.ObjectId;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Hand-written BSON codec for {@link User}, used on the authentication hot path instead of the
+ * reflective MappingMongoConverter.
+ * Produces and reads the same document shape as Spring Data: "_id" as an ObjectId, LocalDateTime
+ * values as BSON dates in the system time zone, roles as an array, null fields omitted and the
+ * "_class" type hint. Unknown fields are skipped, so documents written by newer versions still decode.
+ */
+public class UserCodec implements Codec<User> {
+    
+    static final String TYPE_HINT = User.class.getName();
+    
+    @Override
+    public void encode(BsonWriter writer, User user, EncoderContext encoderContext) {
+        writer.writeStartDocument();
+        
+        if (user.getId() != null) {
+            writeId(writer, user.getId());
+        }
+        writeString(writer, "username", user.getUsername());
+        writeString(writer, "email", user.getEmail());
+        writer.writeBoolean("emailVerified", user.isEmailVerified());
+        writeString(writer, "password", user.getPassword());
+        writeDateTime(writer, "passwordChangedAt", user.getPasswordChangedAt());
+        writer.writeInt64("credentialVersion", user.getCredentialVersion());
+        writeRoles(writer, user.getRoles());
+        writer.writeBoolean("enabled", user.isEnabled());
+        writeDateTime(writer, "createdAt", user.getCreatedAt());
+        writeDateTime(writer, "updatedAt", user.getUpdatedAt());
+        writer.writeString("_class", TYPE_HINT);
+        
+        writer.writeEndDocument();
+    }
+    
+    @Override
+    public User decode(BsonReader reader, DecoderContext decoderContext) {
+        User user = new User();
+        
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            String name = reader.readName();
+            
+            if (reader.getCurrentBsonType() == BsonType.NULL) {
+                reader.readNull();
+                continue;
+            }
+            
+            switch (name) {
+                case "_id" -> user.setId(readId(reader));
+                case "username" -> user.setUsername(reader.readString());
+                case "email" -> user.setEmail(reader.readString());
+                case "emailVerified" -> user.setEmailVerified(reader.readBoolean());
+                case "password" -> user.setPassword(reader.readString());
+                case "passwordChangedAt" -> user.setPasswordChangedAt(readDateTime(reader));
+                case "credentialVersion" -> user.setCredentialVersion(readLong(reader));
+                case "roles" -> user.setRoles(readRoles(reader));
+                case "enabled" -> user.setEnabled(reader.readBoolean());
+                case "createdAt" -> user.setCreatedAt(readDateTime(reader));
+                case "updatedAt" -> user.setUpdatedAt(readDateTime(reader));
+                default -> reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+        
+        return user;
+    }
+    
+    @Override
+    public Class<User> getEncoderClass() {
+        return User.class;
+    }
+    
+    static void writeId(BsonWriter writer, String id) {
+        if (ObjectId.isValid(id)) {
+            writer.writeObjectId("_id", new ObjectId(id));
+        } else {
+            writer.writeString("_id", id);
+        }
+    }
+    
+    static String readId(BsonReader reader) {
+        return reader.getCurrentBsonType() == BsonType.OBJECT_ID
+                ? reader.readObjectId().toHexString()
+                : reader.readString();
+    }
+    
+    static void writeString(BsonWriter writer, String name, String value) {
+        if (value != null) {
+            writer.writeString(name, value);
+        }
+    }
+    
+    static void writeDateTime(BsonWriter writer, String name, LocalDateTime value) {
+        if (value != null) {
+            writer.writeDateTime(name, value.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        }
+    }
+    
+    static LocalDateTime readDateTime(BsonReader reader) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(reader.readDateTime()), ZoneId.systemDefault());
+    }
+    
+    static long readLong(BsonReader reader) {
+        return switch (reader.getCurrentBsonType()) {
+            case INT32 -> reader.readInt32();
+            case DOUBLE -> (long) reader.readDouble();
+            default -> reader.readInt64();
+        };
+    }
+    
+    static void writeRoles(BsonWriter writer, Set<String> roles) {
+        if (roles != null) {
+            writer.writeStartArray("roles");
+            roles.forEach(writer::writeString);
+            writer.writeEndArray();
+        }
+    }
+    
+    static Set<String> readRoles(BsonReader reader) {
+        Set<String> roles = new HashSet<>();
+        
+        reader.readStartArray();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            roles.add(reader.readString());
+        }
+        reader.readEndArray();
+        
+        return roles;
+    }
+}
@@ -1,5 +1,6 @@
 package com.aloneinabyss.lovelace.auth.repository;
 
+import org.springframework.data.mongodb.core.annotation.Collation;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
@@ -8,18 +9,12 @@ import com.aloneinabyss.lovelace.auth.model.User;
 import java.util.Optional;
 
 @Repository
-public interface UserRepository extends MongoRepository<User, String> {
+public interface UserRepository extends MongoRepository<User, String>, UserRepositoryCustom {
     
+    @Collation(User.CASE_INSENSITIVE)
     Optional<User> findByUsername(String username);
     
+    @Collation(User.CASE_INSENSITIVE)
     Optional<User> findByEmail(String email);
     
-    Optional<User> findByPasswordResetToken(String passwordResetToken);
-    
-    Optional<User> findByEmailVerificationToken(String emailVerificationToken);
-    
-    Boolean existsByUsername(String username);
-    
-    Boolean existsByEmail(String email);
-    
 }
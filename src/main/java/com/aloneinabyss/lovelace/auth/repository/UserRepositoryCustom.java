@@ -0,0 +1,64 @@
+package com.aloneinabyss.lovelace.auth.repository;
+
+import com.aloneinabyss.lovelace.auth.model.User;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Authentication hot-path queries decoded with the hand-written {@link UserCodec} and
+ * {@link UserAuthViewCodec} instead of the reflective mapping used by derived queries,
+ * and the user state transitions, each implemented as a single conditional update.
+ * Transitions return the updated user, or empty if the guard did not match.
+ */
+public interface UserRepositoryCustom {
+    
+    /**
+     * Find the authentication fields of a user by username.
+     *
+     * @param username The username
+     * @return Projection with id, username, email, roles, enabled, passwordChangedAt and credential version
+     */
+    Optional<UserAuthView> findAuthViewByUsername(String username);
+    
+    /**
+     * Find the authentication fields of a user by id, e.g. the "userId" claim of a token.
+     *
+     * @param id The user id
+     * @return Projection with id, username, email, roles, enabled, passwordChangedAt and credential version
+     */
+    Optional<UserAuthView> findAuthViewById(String id);
+    
+    /**
+     * Find the users whose username or email equals the given identity, in a single query.
+     * Usernames cannot contain '@', so at most one user matches in practice.
+     * Audit timestamps are not needed to log in and are not fetched,
+     * so the returned users must not be saved back.
+     *
+     * @param identity Username or email
+     * @return Matching users
+     */
+    List<User> findByUsernameOrEmail(String identity);
+    
+    /**
+     * Mark the email of an unverified user as verified and enable the account.
+     *
+     * @param userId The user id
+     * @param email The email address being verified; the update only applies while it is the user's email
+     * @param now The current time
+     * @return The updated user, or empty if the user does not exist, is already verified or changed email
+     */
+    Optional<User> verifyEmail(String userId, String email, LocalDateTime now);
+    
+    /**
+     * Replace the password of a user and increment the credential version.
+     *
+     * @param userId The user id
+     * @param expectedPassword The password hash the caller verified the current password against
+     * @param newPassword The new password hash
+     * @param now The current time
+     * @return The updated user, or empty if the password changed meanwhile
+     */
+    Optional<User> changePassword(String userId, String expectedPassword, String newPassword, LocalDateTime now);
+}
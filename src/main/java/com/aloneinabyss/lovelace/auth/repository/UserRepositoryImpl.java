@@ -0,0 +1,110 @@
+package com.aloneinabyss.lovelace.auth.repository;
+
+import com.aloneinabyss.lovelace.auth.model.User;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Collation;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Implementation of {@link UserRepositoryCustom}.
+ * Lookups run on the driver's typed collections and are decoded by the codecs registered in
+ * MongoConfig, without going through MappingMongoConverter. State transitions are single
+ * findAndModify calls whose query holds the guard, so concurrent requests cannot both succeed
+ * or overwrite each other's changes.
+ * <p>
+ * Username and email lookups use the collation of their unique indexes, which is what lets
+ * MongoDB answer them from the index; they therefore match regardless of case.
+ */
+@RequiredArgsConstructor
+public class UserRepositoryImpl implements UserRepositoryCustom {
+    
+    private static final Bson AUTH_VIEW_FIELDS = Projections.include(
+            "username", "email", "roles", "enabled", "passwordChangedAt", "credentialVersion");
+    
+    private static final Bson LOGIN_EXCLUDED_FIELDS = Projections.exclude(
+            "createdAt", "updatedAt");
+    
+    private static final Collation CASE_INSENSITIVE =
+            org.springframework.data.mongodb.core.query.Collation.parse(User.CASE_INSENSITIVE).toMongoCollation();
+    
+    private final MongoTemplate mongoTemplate;
+    
+    @Override
+    public Optional<UserAuthView> findAuthViewByUsername(String username) {
+        return Optional.ofNullable(users().withDocumentClass(UserAuthView.class)
+                .find(Filters.eq("username", username))
+                .collation(CASE_INSENSITIVE)
+                .projection(AUTH_VIEW_FIELDS)
+                .first());
+    }
+    
+    @Override
+    public Optional<UserAuthView> findAuthViewById(String id) {
+        return Optional.ofNullable(users().withDocumentClass(UserAuthView.class)
+                .find(Filters.eq("_id", ObjectId.isValid(id) ? new ObjectId(id) : id))
+                .projection(AUTH_VIEW_FIELDS)
+                .first());
+    }
+    
+    @Override
+    public List<User> findByUsernameOrEmail(String identity) {
+        return users().withDocumentClass(User.class)
+                .find(Filters.or(Filters.eq("username", identity), Filters.eq("email", identity)))
+                .collation(CASE_INSENSITIVE)
+                .projection(LOGIN_EXCLUDED_FIELDS)
+                .into(new ArrayList<>());
+    }
+    
+    @Override
+    public Optional<User> verifyEmail(String userId, String email, LocalDateTime now) {
+        Query query = Query.query(Criteria.where("_id").is(userId)
+                .and("email").is(email)
+                .and("emailVerified").is(false));
+        Update update = new Update()
+                .set("emailVerified", true)
+                .set("enabled", true)
+                .set("updatedAt", now);
+        
+        return findAndModify(query, update);
+    }
+    
+    @Override
+    public Optional<User> changePassword(String userId, String expectedPassword, String newPassword, LocalDateTime now) {
+        Query query = Query.query(Criteria.where("_id").is(userId)
+                .and("password").is(expectedPassword));
+        
+        return findAndModify(query, passwordUpdate(newPassword, now));
+    }
+    
+    private static Update passwordUpdate(String newPassword, LocalDateTime now) {
+        return new Update()
+                .set("password", newPassword)
+                .set("passwordChangedAt", now)
+                .set("updatedAt", now)
+                .inc("credentialVersion", 1);
+    }
+    
+    private Optional<User> findAndModify(Query query, Update update) {
+        return Optional.ofNullable(mongoTemplate.findAndModify(
+                query, update, FindAndModifyOptions.options().returnNew(true), User.class));
+    }
+    
+    private MongoCollection<Document> users() {
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(User.class));
+    }
+}
@@ -6,11 +6,22 @@ import com.aloneinabyss.lovelace.auth.dto.LoginRequest;
 import com.aloneinabyss.lovelace.auth.dto.RefreshTokenRequest;
 import com.aloneinabyss.lovelace.auth.dto.RegisterRequest;
 import com.aloneinabyss.lovelace.auth.dto.RegisterResponse;
+import com.aloneinabyss.lovelace.auth.dto.SessionResponse;
+import com.aloneinabyss.lovelace.auth.model.OneTimeToken;
 import com.aloneinabyss.lovelace.auth.model.User;
 import com.aloneinabyss.lovelace.auth.repository.UserRepository;
+import com.aloneinabyss.lovelace.config.JwtProperties;
 import com.aloneinabyss.lovelace.security.JwtTokenProvider;
+import com.aloneinabyss.lovelace.security.ParsedToken;
 import com.aloneinabyss.lovelace.security.UserPrincipal;
+import com.aloneinabyss.lovelace.security.VerifiedTokenCache;
+import com.aloneinabyss.lovelace.security.service.CredentialVersionService;
+import com.aloneinabyss.lovelace.security.service.OpaqueRefreshTokenService;
+import com.aloneinabyss.lovelace.security.service.RevocationEpochService;
+import com.aloneinabyss.lovelace.security.service.SessionRegistryService;
 import com.aloneinabyss.lovelace.security.service.TokenBlacklistService;
+import com.aloneinabyss.lovelace.security.service.UserDetailsServiceImpl;
+import com.aloneinabyss.lovelace.security.service.UserPrincipalCache;
 import com.aloneinabyss.lovelace.shared.exception.AuthenticationException;
 import com.aloneinabyss.lovelace.shared.exception.ConflictException;
 import com.aloneinabyss.lovelace.shared.exception.ErrorCode;
@@ -22,32 +33,46 @@ import com.aloneinabyss.lovelace.shared.service.MessageService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
-import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
-import java.util.UUID;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class AuthService {
     
+    private static final Duration PASSWORD_RESET_TOKEN_TTL = Duration.ofHours(1);
+    
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
-    private final AuthenticationManager authenticationManager;
     private final JwtTokenProvider jwtTokenProvider;
-    private final UserDetailsService userDetailsService;
+    private final UserDetailsServiceImpl userDetailsService;
     private final EmailService emailService;
     private final TokenBlacklistService tokenBlacklistService;
     private final TokenValidationService tokenValidationService;
     private final MessageService messageService;
+    private final VerifiedTokenCache verifiedTokenCache;
+    private final CredentialVersionService credentialVersionService;
+    private final RevocationEpochService revocationEpochService;
+    private final PasswordUpgradeService passwordUpgradeService;
+    private final UserPrincipalCache userPrincipalCache;
+    private final OneTimeTokenService oneTimeTokenService;
+    private final EmailVerificationService emailVerificationService;
+    private final OpaqueRefreshTokenService opaqueRefreshTokenService;
+    private final SessionRegistryService sessionRegistryService;
+    private final JwtProperties jwtProperties;
     
     /**
      * Register a new user account.
@@ -59,16 +84,6 @@ public class AuthService {
      * @throws ValidationException if username or email is already taken
      */
     public RegisterResponse register(RegisterRequest request) {
-        if (userRepository.existsByUsername(request.getUsername())) {
-            throw new ValidationException(ErrorCode.USERNAME_TAKEN);
-        }
-        
-        if (userRepository.existsByEmail(request.getEmail())) {
-            throw new ValidationException(ErrorCode.EMAIL_TAKEN);
-        }
-        
-        String verificationToken = UUID.randomUUID().toString();
-        
         LocalDateTime now = LocalDateTime.now();
         
         User user = User.builder()
@@ -78,24 +93,43 @@ public class AuthService {
                 .roles(Set.of("ROLE_USER"))
                 .enabled(false) // User must verify email to enable account
                 .emailVerified(false)
-                .emailVerificationToken(verificationToken)
-                .emailVerificationTokenExpiry(now.plusHours(24))
                 .passwordChangedAt(now) // Set initial password change timestamp
                 .createdAt(now)
                 .updatedAt(now)
                 .build();
         
-        User savedUser = userRepository.save(user);
-
+        User savedUser = insertNewUser(user);
+        String verificationToken = issueEmailVerificationToken(savedUser);
+        
         emailService.sendVerificationEmail(savedUser.getEmail(), verificationToken);
-
+        
         return RegisterResponse.builder()
                 .username(savedUser.getUsername())
                 .email(savedUser.getEmail())
                 .message(messageService.getMessage("auth.register.success"))
                 .build();
     }
-
+    
+    /**
+     * Insert a new user in a single write. Username and email uniqueness is enforced by the
+     * case-insensitive unique indexes; the violated index tells which one is taken.
+     */
+    private User insertNewUser(User user) {
+        try {
+            return userRepository.insert(user);
+        } catch (DuplicateKeyException e) {
+            String message = NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+            
+            if (message != null && message.contains(User.USERNAME_INDEX)) {
+                throw new ValidationException(ErrorCode.USERNAME_TAKEN);
+            }
+            if (message != null && message.contains(User.EMAIL_INDEX)) {
+                throw new ValidationException(ErrorCode.EMAIL_TAKEN);
+            }
+            throw e;
+        }
+    }
+    
     /**
      * Verify a user's email address using the verification token.
      * Enables the user account and sends a welcome email upon successful verification.
@@ -106,28 +140,28 @@ public class AuthService {
      * @throws AuthenticationException if token is expired
      */
     public void verifyEmail(String token) {
-        User user = userRepository.findByEmailVerificationToken(token)
+        // The token is validated (or, for stored tokens, consumed) before touching the user
+        EmailVerificationService.Verification verification = emailVerificationService.verify(token);
+        
+        // Signed links verify only the address they were sent to
+        User current = userRepository.findById(verification.getUserId())
+                .filter(candidate -> verification.isIssuedFor(candidate.getEmail()))
                 .orElseThrow(() -> new ValidationException(ErrorCode.INVALID_TOKEN));
-
-        if (user.isEmailVerified()) {
+        if (current.isEmailVerified()) {
             throw new ConflictException(ErrorCode.EMAIL_ALREADY_VERIFIED);
         }
-
-        if (user.getEmailVerificationTokenExpiry() == null || 
-            user.getEmailVerificationTokenExpiry().isBefore(LocalDateTime.now())) {
-            throw new AuthenticationException(ErrorCode.TOKEN_EXPIRED);
-        }
-
-        user.setEmailVerified(true);
-        user.setEnabled(true);
-        user.setEmailVerificationToken(null);
-        user.setEmailVerificationTokenExpiry(null);
-        user.setUpdatedAt(LocalDateTime.now());
-        userRepository.save(user);
-
+        
+        // Guarded on the email as well, in case it changes between the read and the update
+        User user = userRepository.verifyEmail(current.getId(), current.getEmail(), LocalDateTime.now())
+                .orElseThrow(() -> userRepository.findById(current.getId())
+                        .filter(User::isEmailVerified)
+                        .<RuntimeException>map(verified -> new ConflictException(ErrorCode.EMAIL_ALREADY_VERIFIED))
+                        .orElseGet(() -> new ValidationException(ErrorCode.INVALID_TOKEN)));
+        userPrincipalCache.invalidate(user.getId(), user.getUsername());
+        
         emailService.sendWelcomeEmail(user.getEmail(), user.getUsername());
     }
-
+    
     /**
      * Resend the email verification link to a user.
      * Generates a new verification token and sends it to the user's email.
@@ -144,22 +178,18 @@ public class AuthService {
         if (user.isEmailVerified()) {
             throw new ConflictException(ErrorCode.EMAIL_ALREADY_VERIFIED);
         }
-
-        if (tokenValidationService.hasRecentEmailVerificationToken(user)) {
-            throw new ConflictException(ErrorCode.EMAIL_VERIFICATION_PENDING);
-        }
-        
-        // Generate new verification token
-        String verificationToken = UUID.randomUUID().toString();
-        user.setEmailVerificationToken(verificationToken);
-        user.setEmailVerificationTokenExpiry(LocalDateTime.now().plusHours(24));
-        user.setUpdatedAt(LocalDateTime.now());
         
-        userRepository.save(user);
-        
-        emailService.sendVerificationEmail(user.getEmail(), verificationToken);
+        emailService.sendVerificationEmail(user.getEmail(), issueEmailVerificationToken(user));
     }
-
+    
+    /**
+     * Issue a new email verification token, unless one was issued within the resend cooldown.
+     */
+    private String issueEmailVerificationToken(User user) {
+        return emailVerificationService.issue(user)
+                .orElseThrow(() -> new ConflictException(ErrorCode.EMAIL_VERIFICATION_PENDING));
+    }
+    
     /**
      * Authenticate a user and generate access and refresh tokens.
      * Supports login with username or email. Verifies credentials and email verification status.
@@ -170,15 +200,8 @@ public class AuthService {
      * @throws AuthenticationException if credentials are invalid or email is not verified
      */
     public AuthTokens login(LoginRequest request) {
-        // Try to find user by username or email
-        User user = userRepository.findByUsername(request.getIdentity())
-            .or(() -> userRepository.findByEmail(request.getIdentity()))
-            .orElseThrow(() -> new AuthenticationException(ErrorCode.INVALID_CREDENTIALS));
-
-        if (!passwordEncoder.matches(request.getPassword(), user.getPassword())) {
-            throw new AuthenticationException(ErrorCode.INVALID_CREDENTIALS);
-        }
-
+        User user = authenticate(request.getIdentity(), request.getPassword());
+        
         if (!user.isEmailVerified()) {
             if (tokenValidationService.hasRecentEmailVerificationToken(user)) {
                 throw new AuthenticationException(ErrorCode.EMAIL_NOT_VERIFIED_PENDING);
@@ -188,90 +211,230 @@ public class AuthService {
             }
         }
         
-        Authentication authentication = authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(
-                        user.getUsername(), // Always use username for authentication
-                        request.getPassword()
-                )
-        );
+        if (!user.isEnabled()) {
+            throw new AuthenticationException(ErrorCode.INVALID_CREDENTIALS);
+        }
         
-        SecurityContextHolder.getContext().setAuthentication(authentication);
+        UserPrincipal userPrincipal = UserPrincipal.build(user);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(userPrincipal, null, userPrincipal.getAuthorities()));
+        
+        // Both tokens, and every token later rotated from them, belong to one session. It is
+        // registered before any token is issued, so a failed registration leaves no live token
+        // behind, and a session evicted meanwhile has its tokens rejected by the family check.
+        // Over the session limit this revokes the user's least recently refreshed session.
+        String sessionId = JwtTokenProvider.newSessionId();
+        sessionRegistryService.register(userPrincipal.getId(), sessionId, refreshTokenExpiry());
+        
+        String refreshToken;
+        try {
+            refreshToken = issueRefreshToken(userPrincipal, sessionId);
+        } catch (RuntimeException e) {
+            // Do not let a session without tokens count against the user's limit
+            try {
+                sessionRegistryService.revoke(userPrincipal.getId(), sessionId);
+            } catch (RuntimeException revokeFailure) {
+                e.addSuppressed(revokeFailure);
+            }
+            throw e;
+        }
+        String jwt = jwtTokenProvider.generateToken(userPrincipal, sessionId);
         
-        UserPrincipal userPrincipal = (UserPrincipal) authentication.getPrincipal();
-        String jwt = jwtTokenProvider.generateToken(userPrincipal);
-        String refreshToken = jwtTokenProvider.generateRefreshToken(userPrincipal);
+        return buildAuthTokens(userPrincipal, jwt, refreshToken);
+    }
+    
+    /**
+     * Verify login credentials with one database query and one password hash comparison.
+     * Replaces the AuthenticationManager round trip, which loaded the user a second time
+     * and ran BCrypt again after the credentials had already been checked.
+     *
+     * @param identity Username or email
+     * @param password The raw password
+     * @return The authenticated user
+     * @throws AuthenticationException if no user matches or the password is wrong
+     */
+    private User authenticate(String identity, String password) {
+        List<User> candidates = userRepository.findByUsernameOrEmail(identity);
         
-        AuthResponse authResponse = AuthResponse.builder()
-                .token(jwt)
-                .username(userPrincipal.getUsername())
-                .email(userPrincipal.getEmail())
-                .roles(userPrincipal.getAuthorities().stream()
-                        .map(Object::toString)
-                        .collect(java.util.stream.Collectors.toSet()))
-                .build();
+        // Prefer a username match, as the previous username-then-email lookup did
+        User user = candidates.stream()
+                .filter(candidate -> identity.equals(candidate.getUsername()))
+                .findFirst()
+                .or(() -> candidates.stream().findFirst())
+                .orElseThrow(() -> new AuthenticationException(ErrorCode.INVALID_CREDENTIALS));
         
-        return AuthTokens.builder()
-                .authResponse(authResponse)
-                .refreshToken(refreshToken)
-                .build();
+        if (!passwordEncoder.matches(password, user.getPassword())) {
+            throw new AuthenticationException(ErrorCode.INVALID_CREDENTIALS);
+        }
+        
+        if (passwordUpgradeService.needsUpgrade(user.getPassword())) {
+            passwordUpgradeService.upgradeAsync(user.getId(), password, user.getPassword());
+        }
+        
+        return user;
     }
     
     /**
      * Refresh access and refresh tokens using a valid refresh token.
-     * Implements token rotation by blacklisting the old refresh token after use.
+     * Implements token rotation by atomically checking and blacklisting the old refresh token,
+     * in a single Redis round trip. Reusing a rotated token revokes its whole session, except within
+     * a short grace window, where concurrent refreshes receive the tokens of the first rotation.
      * Validates token against password change timestamp to ensure token validity.
+     * Opaque refresh tokens are looked up and rotated in Redis instead of being verified.
      *
      * @param request The refresh token request containing the current refresh token
      * @return AuthTokens containing new access token, new refresh token, and user details
      * @throws AuthenticationException if refresh token has been blacklisted, is invalid, or expired
+     * @throws ConflictException if a concurrent refresh with the same token has not finished yet
      */
     public AuthTokens refreshToken(RefreshTokenRequest request) {
-        String refreshToken = request.getRefreshToken();
-        
-        // Check if the refresh token has been blacklisted (already used or revoked)
-        if (tokenBlacklistService.isBlacklisted(refreshToken)) {
-            // This is a security breach - someone is trying to reuse an old refresh token
-            // This could indicate token theft
+        ParsedToken refreshToken;
+        UserPrincipal userPrincipal;
+        TokenBlacklistService.RevocationResult result;
+        String newRefreshToken = null;
+        
+        if (OpaqueRefreshTokenService.isOpaque(request.getRefreshToken())) {
+            // Look up, check and rotate the token in one round trip; the user is validated afterwards
+            OpaqueRefreshTokenService.Rotation rotation = opaqueRefreshTokenService.rotate(request.getRefreshToken());
+            refreshToken = rotation.getPresentedToken();
+            result = rotation.getResult();
+            rejectUnusableRefreshToken(result, refreshToken.getSubject());
+            
             try {
-                String username = jwtTokenProvider.extractUsername(refreshToken);
-                log.error("SECURITY ALERT: Attempt to reuse blacklisted refresh token for user: {}", username);
-                
-                // Optional: Invalidate all tokens for this user by forcing re-login
-                // For now, we'll just reject the request
-                throw new AuthenticationException(ErrorCode.TOKEN_REUSED);
+                userPrincipal = loadRefreshingUser(refreshToken);
             } catch (AuthenticationException e) {
-                // Re-throw AuthenticationException
+                if (rotation.getNewToken() != null) {
+                    opaqueRefreshTokenService.discard(rotation.getNewToken());
+                }
                 throw e;
-            } catch (Exception e) {
-                log.error("Failed to extract username from blacklisted token: {}", e.getMessage());
-                throw new AuthenticationException(ErrorCode.TOKEN_REUSED);
             }
+            newRefreshToken = rotation.getNewToken();
+        } else {
+            // Verify and parse the refresh token once; every check below reuses the result
+            refreshToken = jwtTokenProvider.parseToken(request.getRefreshToken());
+            userPrincipal = loadRefreshingUser(refreshToken);
+            
+            // Check and blacklist the old refresh token in one atomic step (rotation),
+            // so two concurrent requests cannot both use the same token
+            result = tokenBlacklistService.checkAndRevoke(refreshToken);
+            rejectUnusableRefreshToken(result, refreshToken.getSubject());
         }
         
-        // Extract username from refresh token
-        String username = jwtTokenProvider.extractUsername(refreshToken);
-        
-        // Load user details
-        UserPrincipal userPrincipal = (UserPrincipal) userDetailsService.loadUserByUsername(username);
+        String username = refreshToken.getSubject();
         
-        // Validate the refresh token with password change timestamp check
-        if (!jwtTokenProvider.validateToken(refreshToken, userPrincipal, userPrincipal.getPasswordChangedAt())) {
-            throw new AuthenticationException(ErrorCode.TOKEN_INVALID);
+        if (result == TokenBlacklistService.RevocationResult.RECENTLY_ROTATED) {
+            // A concurrent request (e.g. another browser tab) rotated this token moments ago;
+            // answer with the same tokens rather than minting a second pair, or ask the client
+            // to retry while that rotation is still in progress
+            TokenBlacklistService.RotatedTokens rotated = tokenBlacklistService.findRotation(refreshToken)
+                    .orElseThrow(() -> new AuthenticationException(ErrorCode.TOKEN_REUSED));
+            log.debug("Concurrent token refresh for user {} answered from the grace window", username);
+            return buildAuthTokens(userPrincipal, rotated.getAccessToken(), rotated.getRefreshToken());
         }
-        
-        // Blacklist the old refresh token immediately (rotation)
-        // This ensures one-time use of refresh tokens
-        tokenBlacklistService.blacklistToken(refreshToken);
         log.debug("Old refresh token blacklisted for user: {}", username);
         
-        // Generate new access token and refresh token
-        String newAccessToken = jwtTokenProvider.generateToken(userPrincipal);
-        String newRefreshToken = jwtTokenProvider.generateRefreshToken(userPrincipal);
+        // Generate new access token and refresh token within the same session
+        String sessionId = refreshToken.getSessionId() != null
+                ? refreshToken.getSessionId()
+                : JwtTokenProvider.newSessionId();
+        String newAccessToken = jwtTokenProvider.generateToken(userPrincipal, sessionId);
+        if (newRefreshToken == null) {
+            newRefreshToken = issueRefreshToken(userPrincipal, sessionId);
+        }
+        
+        // Tokens issued before sessions were tracked start a new session here
+        if (refreshToken.getSessionId() != null) {
+            sessionRegistryService.extend(userPrincipal.getId(), sessionId, refreshTokenExpiry());
+        } else {
+            sessionRegistryService.register(userPrincipal.getId(), sessionId, refreshTokenExpiry());
+        }
+        tokenBlacklistService.recordRotation(refreshToken, newAccessToken, newRefreshToken);
         
         log.info("Token refresh successful for user: {}", username);
         
+        return buildAuthTokens(userPrincipal, newAccessToken, newRefreshToken);
+    }
+    
+    /**
+     * Load the user a refresh token belongs to and check that the token is still valid for them.
+     *
+     * @param refreshToken The presented refresh token
+     * @return The user the token belongs to
+     * @throws AuthenticationException if the token has been revoked or is no longer valid
+     */
+    private UserPrincipal loadRefreshingUser(ParsedToken refreshToken) {
+        // Reject refresh tokens issued before a "log out everywhere" style revocation
+        if (revocationEpochService.isRevoked(refreshToken)) {
+            throw new AuthenticationException(ErrorCode.TOKEN_REVOKED);
+        }
+        
+        // Load user details by primary key when the token carries the user id
+        UserPrincipal userPrincipal = refreshToken.getUserId() != null
+                ? userDetailsService.loadUserById(refreshToken.getUserId())
+                : (UserPrincipal) userDetailsService.loadUserByUsername(refreshToken.getSubject());
+        
+        // Validate the refresh token with password change timestamp and credential version checks
+        if (!jwtTokenProvider.validateToken(refreshToken, userPrincipal, userPrincipal.getPasswordChangedAt())
+                || refreshToken.getCredentialVersion() < userPrincipal.getCredentialVersion()) {
+            throw new AuthenticationException(ErrorCode.TOKEN_INVALID);
+        }
+        
+        return userPrincipal;
+    }
+    
+    /**
+     * Reject a refresh token whose single-use check failed.
+     *
+     * @param result The outcome of the single-use check
+     * @param username The user the token belongs to, for the security log
+     * @throws AuthenticationException if the token was reused or its session revoked
+     */
+    private static void rejectUnusableRefreshToken(TokenBlacklistService.RevocationResult result, String username) {
+        switch (result) {
+            case REUSED -> {
+                // An already used refresh token was presented again, which indicates token theft;
+                // the whole session has been revoked so neither party can keep refreshing
+                log.error("SECURITY ALERT: Attempt to reuse blacklisted refresh token for user: {}", username);
+                throw new AuthenticationException(ErrorCode.TOKEN_REUSED);
+            }
+            case FAMILY_REVOKED -> throw new AuthenticationException(ErrorCode.TOKEN_REVOKED);
+            default -> {
+                // The token may be used
+            }
+        }
+    }
+    
+    /**
+     * Get the expiry of a refresh token issued now, which is also when its session ends.
+     */
+    private long refreshTokenExpiry() {
+        return System.currentTimeMillis() + jwtProperties.getRefreshExpiration();
+    }
+    
+    /**
+     * Issue a refresh token in the configured format.
+     *
+     * @param userPrincipal The authenticated user
+     * @param sessionId The session the token belongs to
+     * @return A JWT or opaque refresh token
+     */
+    private String issueRefreshToken(UserPrincipal userPrincipal, String sessionId) {
+        return opaqueRefreshTokenService.isEnabled()
+                ? opaqueRefreshTokenService.issue(userPrincipal, sessionId)
+                : jwtTokenProvider.generateRefreshToken(userPrincipal, sessionId);
+    }
+    
+    /**
+     * Assemble the login or refresh response for a token pair.
+     *
+     * @param userPrincipal The authenticated user
+     * @param accessToken The access token returned in the body
+     * @param refreshToken The refresh token set as a cookie
+     * @return AuthTokens containing both tokens and user details
+     */
+    private static AuthTokens buildAuthTokens(UserPrincipal userPrincipal, String accessToken, String refreshToken) {
         AuthResponse authResponse = AuthResponse.builder()
-                .token(newAccessToken)
+                .token(accessToken)
                 .username(userPrincipal.getUsername())
                 .email(userPrincipal.getEmail())
                 .roles(userPrincipal.getAuthorities().stream()
@@ -281,7 +444,7 @@ public class AuthService {
         
         return AuthTokens.builder()
                 .authResponse(authResponse)
-                .refreshToken(newRefreshToken)
+                .refreshToken(refreshToken)
                 .build();
     }
     
@@ -297,18 +460,10 @@ public class AuthService {
         User user = userRepository.findByEmail(email)
                 .orElseThrow(() -> new NotFoundException(ErrorCode.USER_NOT_FOUND));
         
-        // Check if there's a recent password reset request (within 5 minutes)
-        if (tokenValidationService.hasRecentPasswordResetToken(user)) {
-            throw new ConflictException(ErrorCode.PASSWORD_RESET_PENDING);
-        }
-        
-        // Generate password reset token
-        String token = UUID.randomUUID().toString();
-        user.setPasswordResetToken(token);
-        user.setPasswordResetTokenExpiry(LocalDateTime.now().plusHours(1));
-        user.setUpdatedAt(LocalDateTime.now());
-        
-        userRepository.save(user);
+        // Issue the reset token only if there's no recent password reset request (within 5 minutes)
+        String token = oneTimeTokenService.issue(
+                        user.getId(), OneTimeToken.Purpose.PASSWORD_RESET, PASSWORD_RESET_TOKEN_TTL)
+                .orElseThrow(() -> new ConflictException(ErrorCode.PASSWORD_RESET_PENDING));
         
         // Send password reset email
         emailService.sendPasswordResetEmail(user.getEmail(), token);
@@ -323,54 +478,59 @@ public class AuthService {
      * @param newPassword The new password to set
      * @throws ValidationException if token is invalid or new password matches current password
      * @throws AuthenticationException if token is expired
+     * @throws ConflictException if a concurrent request used the token or changed the password first
      */
     public void resetPassword(String token, String newPassword) {
-        // Find user by reset token
-        User user = userRepository.findByPasswordResetToken(token)
+        // Find the reset token by its hash
+        OneTimeToken resetToken = oneTimeTokenService.find(token, OneTimeToken.Purpose.PASSWORD_RESET)
                 .orElseThrow(() -> new ValidationException(ErrorCode.INVALID_TOKEN));
         
         // Check if token is expired
-        if (user.getPasswordResetTokenExpiry() == null || 
-            user.getPasswordResetTokenExpiry().isBefore(LocalDateTime.now())) {
+        if (resetToken.getExpiresAt().isBefore(LocalDateTime.now())) {
             throw new AuthenticationException(ErrorCode.TOKEN_EXPIRED);
         }
         
+        User user = userRepository.findById(resetToken.getUserId())
+                .orElseThrow(() -> new ValidationException(ErrorCode.INVALID_TOKEN));
+        
         // Validate that new password is different from the current password
         if (passwordEncoder.matches(newPassword, user.getPassword())) {
             throw new ValidationException(ErrorCode.PASSWORD_MUST_BE_DIFFERENT);
         }
         
-        LocalDateTime now = LocalDateTime.now();
+        // Consume the token so it cannot be used twice; it was found above, so a miss here
+        // means a concurrent request consumed it first
+        oneTimeTokenService.consume(token, OneTimeToken.Purpose.PASSWORD_RESET)
+                .orElseThrow(() -> new ConflictException(ErrorCode.RESET_TOKEN_ALREADY_USED));
         
-        // Update password and set passwordChangedAt timestamp
+        // Update password and set passwordChangedAt, unless the password changed since it was read
         // This will invalidate all existing JWT tokens issued before this moment
-        user.setPassword(passwordEncoder.encode(newPassword));
-        user.setPasswordResetToken(null);
-        user.setPasswordResetTokenExpiry(null);
-        user.setPasswordChangedAt(now);
-        user.setUpdatedAt(now);
+        User updated = userRepository.changePassword(
+                        user.getId(), user.getPassword(), passwordEncoder.encode(newPassword), LocalDateTime.now())
+                .orElseThrow(() -> new ConflictException(ErrorCode.PASSWORD_CHANGED_CONCURRENTLY));
         
-        userRepository.save(user);
+        onPasswordChanged(updated);
         
-        log.info("Password reset successful for user: {}. All existing tokens invalidated.", user.getUsername());
+        log.info("Password reset successful for user: {}. All existing tokens invalidated.", updated.getUsername());
         
         // Send confirmation email
-        emailService.sendPasswordChangedEmail(user.getEmail(), user.getUsername());
+        emailService.sendPasswordChangedEmail(updated.getEmail(), updated.getUsername());
     }
     
     /**
      * Change password for an authenticated user.
      * Validates current password, updates to new password, and invalidates all existing tokens.
      *
-     * @param username The username of the authenticated user
+     * @param userId The id of the authenticated user
      * @param currentPassword The current password for verification
      * @param newPassword The new password
      * @throws NotFoundException if user not found
      * @throws ValidationException if current password is incorrect or new password matches current password
+     * @throws ConflictException if a concurrent request changed the password after it was verified
      */
-    public void changePassword(String username, String currentPassword, String newPassword) {
+    public void changePassword(String userId, String currentPassword, String newPassword) {
         // Find the user
-        User user = userRepository.findByUsername(username)
+        User user = userRepository.findById(userId)
                 .orElseThrow(() -> new NotFoundException(ErrorCode.USER_NOT_FOUND));
         
         // Verify current password
@@ -383,45 +543,107 @@ public class AuthService {
             throw new ValidationException(ErrorCode.PASSWORD_MUST_BE_DIFFERENT);
         }
         
-        LocalDateTime now = LocalDateTime.now();
-        
-        // Update password and set passwordChangedAt timestamp
+        // Update password and set passwordChangedAt timestamp, unless another request changed it
+        // since it was verified above; the current password was correct, so report the race
         // This will invalidate all existing JWT tokens issued before this moment
-        user.setPassword(passwordEncoder.encode(newPassword));
-        user.setPasswordChangedAt(now);
-        user.setUpdatedAt(now);
+        User updated = userRepository.changePassword(
+                        userId, user.getPassword(), passwordEncoder.encode(newPassword), LocalDateTime.now())
+                .orElseThrow(() -> new ConflictException(ErrorCode.PASSWORD_CHANGED_CONCURRENTLY));
         
-        userRepository.save(user);
+        onPasswordChanged(updated);
         
-        log.info("Password changed successfully for user: {}. All existing tokens invalidated.", user.getUsername());
+        log.info("Password changed successfully for user: {}. All existing tokens invalidated.", updated.getUsername());
         
         // Send confirmation email
-        emailService.sendPasswordChangedEmail(user.getEmail(), user.getUsername());
+        emailService.sendPasswordChangedEmail(updated.getEmail(), updated.getUsername());
     }
     
     /**
-     * Logout a user by blacklisting their access token and optionally their refresh token.
-     * Blacklisted tokens cannot be used for authentication until they naturally expire.
+     * Drop cached state of a user whose password changed and broadcast the new credential version.
+     */
+    private void onPasswordChanged(User user) {
+        sessionRegistryService.clear(user.getId());
+        verifiedTokenCache.invalidateUser(user.getUsername());
+        userPrincipalCache.invalidate(user.getId(), user.getUsername());
+        credentialVersionService.publish(user.getId(), user.getCredentialVersion());
+    }
+    
+    /**
+     * Logout a user by blacklisting their access token, optionally their refresh token, and their session.
+     * Blacklisted tokens cannot be used for authentication until they naturally expire; revoking the
+     * session also covers refresh tokens rotated from the same login.
      *
-     * @param accessToken The access token to blacklist
+     * @param accessToken The already verified access token to blacklist
      * @param refreshToken The refresh token to blacklist (optional)
      */
-    public void logout(String accessToken, String refreshToken) {
-        // Blacklist the access token
-        tokenBlacklistService.blacklistToken(accessToken);
+    public void logout(ParsedToken accessToken, String refreshToken) {
+        List<ParsedToken> tokens = new ArrayList<>(2);
+        tokens.add(accessToken);
         
-        // Blacklist the refresh token if provided
+        // Blacklist the refresh token too if provided
         if (refreshToken != null && !refreshToken.isEmpty()) {
             try {
-                tokenBlacklistService.blacklistToken(refreshToken);
+                if (OpaqueRefreshTokenService.isOpaque(refreshToken)) {
+                    // Opaque refresh tokens are revoked by deleting them
+                    opaqueRefreshTokenService.discard(refreshToken);
+                } else {
+                    tokens.add(jwtTokenProvider.parseToken(refreshToken));
+                }
             } catch (Exception e) {
-                // Log but don't fail - access token is already blacklisted
+                // Log but don't fail - the access token and its session are still revoked,
                 // which is the primary security concern
-                log.warn("Failed to blacklist refresh token: {}", e.getMessage());
+                log.warn("Failed to parse refresh token on logout: {}", e.getMessage());
             }
         }
         
+        // Revoke both tokens and the session in one round trip
+        tokenBlacklistService.revoke(tokens, accessToken.getSessionId());
+        
         // Clear security context
         SecurityContextHolder.clearContext();
     }
+    
+    /**
+     * Logout a user from every session by revoking all tokens issued to them so far.
+     * This is a single write regardless of how many tokens the user holds.
+     *
+     * @param userId The id of the user to log out everywhere
+     */
+    public void logoutEverywhere(String userId) {
+        revocationEpochService.revokeUser(userId);
+        sessionRegistryService.clear(userId);
+        
+        // Clear security context
+        SecurityContextHolder.clearContext();
+    }
+    
+    /**
+     * List the live sessions of a user.
+     *
+     * @param userId The id of the user
+     * @param currentSessionId The session of the request's access token, marked as current
+     * @return The user's sessions, the one expiring first first
+     */
+    public List<SessionResponse> listSessions(String userId, String currentSessionId) {
+        return sessionRegistryService.list(userId).stream()
+                .map(session -> SessionResponse.builder()
+                        .sessionId(session.getSessionId())
+                        .expiresAt(LocalDateTime.ofInstant(Instant.ofEpochMilli(session.getExpiresAt()), ZoneId.systemDefault()))
+                        .current(session.getSessionId().equals(currentSessionId))
+                        .build())
+                .toList();
+    }
+    
+    /**
+     * Revoke one session of a user, logging out the device that holds it.
+     *
+     * @param userId The id of the user
+     * @param sessionId The session to revoke
+     * @throws NotFoundException if the user has no such session
+     */
+    public void revokeSession(String userId, String sessionId) {
+        if (!sessionRegistryService.revoke(userId, sessionId)) {
+            throw new NotFoundException(ErrorCode.SESSION_NOT_FOUND);
+        }
+    }
 }
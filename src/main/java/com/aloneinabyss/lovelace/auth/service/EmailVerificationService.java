@@ -0,0 +1,263 @@
+package com.aloneinabyss.lovelace.auth.service;
+
+import com.aloneinabyss.lovelace.auth.model.OneTimeToken;
+import com.aloneinabyss.lovelace.auth.model.User;
+import com.aloneinabyss.lovelace.config.EmailVerificationProperties;
+import com.aloneinabyss.lovelace.config.JwtProperties;
+import com.aloneinabyss.lovelace.security.TokenHashing;
+import com.aloneinabyss.lovelace.shared.exception.AuthenticationException;
+import com.aloneinabyss.lovelace.shared.exception.ErrorCode;
+import com.aloneinabyss.lovelace.shared.exception.ValidationException;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Issues and checks email verification links.
+ * <p>
+ * In SIGNED mode a link carries a compact HMAC-SHA256 signed payload of the user id, a hash of
+ * the email it was sent to, its expiry and a random nonce. Verification only checks the signature
+ * and expiry in memory; nothing is written when the link is issued, and the resend cooldown is a
+ * single Redis key per user. A signed link only verifies the address it was sent to, so a link
+ * issued before an email change cannot verify the new address. In STORED mode links carry a
+ * random token kept in the one-time token collection. Links of either kind are accepted
+ * regardless of the current mode, so switching modes does not invalidate emails already sent.
+ */
+@Slf4j
+@Service
+public class EmailVerificationService {
+    
+    private static final String COOLDOWN_PREFIX = "email-verification:cooldown:";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final byte PAYLOAD_VERSION = 1;
+    private static final int NONCE_BYTES = 8;
+    private static final int EMAIL_HASH_BYTES = 16;
+    
+    /**
+     * Version, expiry (epoch seconds), nonce and email hash; the user id fills the rest of the payload
+     */
+    private static final int FIXED_PAYLOAD_BYTES = 1 + Long.BYTES + NONCE_BYTES + EMAIL_HASH_BYTES;
+    
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+    private static final Base64.Encoder BASE64_URL_ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder BASE64_URL_DECODER = Base64.getUrlDecoder();
+    
+    private final EmailVerificationProperties properties;
+    private final OneTimeTokenService oneTimeTokenService;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final SecretKeySpec signingKey;
+    
+    public EmailVerificationService(EmailVerificationProperties properties,
+                                    JwtProperties jwtProperties,
+                                    OneTimeTokenService oneTimeTokenService,
+                                    RedisTemplate<String, String> redisTemplate) {
+        this.properties = properties;
+        this.oneTimeTokenService = oneTimeTokenService;
+        this.redisTemplate = redisTemplate;
+        this.signingKey = resolveSigningKey(properties, jwtProperties);
+        
+        log.info("Email verification links use {} mode", properties.getMode());
+    }
+    
+    /**
+     * A valid verification token: the user it was issued to and, for signed links, the address it was sent to
+     */
+    @Value
+    public static class Verification {
+        String userId;
+        
+        /**
+         * Truncated hash of the email the link was sent to; null for stored tokens
+         */
+        byte[] emailHash;
+        
+        /**
+         * Check whether the token was issued for an email address.
+         *
+         * @param email The user's current email
+         * @return true if the link was sent to this address, or the token does not record one
+         */
+        public boolean isIssuedFor(String email) {
+            return emailHash == null || MessageDigest.isEqual(emailHash, emailHash(email));
+        }
+    }
+    
+    /**
+     * Issue a verification token for a user, unless one was issued within the resend cooldown.
+     *
+     * @param user The unverified user
+     * @return The token to put in the verification link, or empty if a recent one exists
+     */
+    public Optional<String> issue(User user) {
+        Duration timeToLive = Duration.ofMillis(properties.getToken().getExpiration());
+        
+        if (properties.getMode() == EmailVerificationProperties.Mode.STORED) {
+            return oneTimeTokenService.issue(user.getId(), OneTimeToken.Purpose.EMAIL_VERIFICATION, timeToLive);
+        }
+        
+        if (!startCooldown(user.getId())) {
+            return Optional.empty();
+        }
+        return Optional.of(sign(user.getId(), user.getEmail(), Instant.now().plus(timeToLive)));
+    }
+    
+    /**
+     * Check whether a verification token was issued to a user within the resend cooldown.
+     *
+     * @param user The user
+     * @return true if a recent token exists
+     */
+    public boolean hasRecent(User user) {
+        if (properties.getMode() == EmailVerificationProperties.Mode.STORED) {
+            return oneTimeTokenService.hasRecent(user.getId(), OneTimeToken.Purpose.EMAIL_VERIFICATION);
+        }
+        
+        try {
+            return Boolean.TRUE.equals(redisTemplate.hasKey(COOLDOWN_PREFIX + user.getId()));
+        } catch (Exception e) {
+            log.warn("Failed to read email verification cooldown: {}", e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Validate a verification token. Stored tokens are consumed.
+     *
+     * The caller must check {@link Verification#isIssuedFor(String)} against the user's current email.
+     *
+     * @param token The token from the verification link
+     * @return The user the token was issued to and the email it was sent to, if recorded
+     * @throws ValidationException if the token is malformed, forged or unknown
+     * @throws AuthenticationException if the token has expired
+     */
+    public Verification verify(String token) {
+        if (token.indexOf('.') >= 0) {
+            return verifySigned(token);
+        }
+        
+        return oneTimeTokenService.consume(token, OneTimeToken.Purpose.EMAIL_VERIFICATION)
+                .map(oneTimeToken -> new Verification(oneTimeToken.getUserId(), null))
+                .orElseThrow(() -> {
+                    // Expired tokens linger until the TTL monitor removes them
+                    if (oneTimeTokenService.find(token, OneTimeToken.Purpose.EMAIL_VERIFICATION).isPresent()) {
+                        return new AuthenticationException(ErrorCode.TOKEN_EXPIRED);
+                    }
+                    return new ValidationException(ErrorCode.INVALID_TOKEN);
+                });
+    }
+    
+    private String sign(String userId, String email, Instant expiresAt) {
+        byte[] userIdBytes = userId.getBytes(StandardCharsets.UTF_8);
+        byte[] nonce = new byte[NONCE_BYTES];
+        SECURE_RANDOM.nextBytes(nonce);
+        
+        byte[] payload = ByteBuffer.allocate(FIXED_PAYLOAD_BYTES + userIdBytes.length)
+                .put(PAYLOAD_VERSION)
+                .putLong(expiresAt.getEpochSecond())
+                .put(nonce)
+                .put(emailHash(email))
+                .put(userIdBytes)
+                .array();
+        
+        return BASE64_URL_ENCODER.encodeToString(payload) + "." + BASE64_URL_ENCODER.encodeToString(mac(payload));
+    }
+    
+    private Verification verifySigned(String token) {
+        byte[] payload;
+        byte[] signature;
+        
+        try {
+            int separator = token.indexOf('.');
+            payload = BASE64_URL_DECODER.decode(token.substring(0, separator));
+            signature = BASE64_URL_DECODER.decode(token.substring(separator + 1));
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException(ErrorCode.INVALID_TOKEN);
+        }
+        
+        if (signingKey == null || payload.length <= FIXED_PAYLOAD_BYTES || payload[0] != PAYLOAD_VERSION
+                || !MessageDigest.isEqual(mac(payload), signature)) {
+            throw new ValidationException(ErrorCode.INVALID_TOKEN);
+        }
+        
+        ByteBuffer buffer = ByteBuffer.wrap(payload, 1, payload.length - 1);
+        if (Instant.ofEpochSecond(buffer.getLong()).isBefore(Instant.now())) {
+            throw new AuthenticationException(ErrorCode.TOKEN_EXPIRED);
+        }
+        
+        byte[] emailHash = new byte[EMAIL_HASH_BYTES];
+        buffer.position(buffer.position() + NONCE_BYTES).get(emailHash);
+        
+        return new Verification(
+                new String(payload, FIXED_PAYLOAD_BYTES, payload.length - FIXED_PAYLOAD_BYTES, StandardCharsets.UTF_8),
+                emailHash);
+    }
+    
+    /**
+     * Start the resend cooldown of a user in one atomic SET NX, so concurrent requests cannot both send.
+     * Fails open: the cooldown only limits email volume.
+     */
+    private boolean startCooldown(String userId) {
+        try {
+            return Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(
+                    COOLDOWN_PREFIX + userId, "1", Duration.ofMillis(properties.getResendCooldown())));
+        } catch (Exception e) {
+            log.warn("Failed to set email verification cooldown: {}", e.getMessage());
+            return true;
+        }
+    }
+    
+    private byte[] mac(byte[] payload) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(signingKey);
+            return mac.doFinal(payload);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 not available", e);
+        }
+    }
+    
+    private static byte[] emailHash(String email) {
+        return Arrays.copyOf(TokenHashing.sha256(email.toLowerCase(Locale.ROOT)), EMAIL_HASH_BYTES);
+    }
+    
+    /**
+     * Use the configured secret, or derive a dedicated key from jwt.secret so that a verification
+     * link can never be confused with a JWT signature.
+     */
+    private static SecretKeySpec resolveSigningKey(EmailVerificationProperties properties, JwtProperties jwtProperties) {
+        if (properties.getSecret() != null && !properties.getSecret().isBlank()) {
+            return new SecretKeySpec(Base64.getDecoder().decode(properties.getSecret()), HMAC_ALGORITHM);
+        }
+        
+        if (jwtProperties.getSecret() != null && !jwtProperties.getSecret().isBlank()) {
+            try {
+                Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+                mac.init(new SecretKeySpec(Base64.getDecoder().decode(jwtProperties.getSecret()), HMAC_ALGORITHM));
+                byte[] derived = mac.doFinal("email-verification".getBytes(StandardCharsets.UTF_8));
+                return new SecretKeySpec(derived, HMAC_ALGORITHM);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HMAC-SHA256 not available", e);
+            }
+        }
+        
+        if (properties.getMode() == EmailVerificationProperties.Mode.SIGNED) {
+            throw new IllegalStateException("Signed email verification requires email.verification.secret or jwt.secret");
+        }
+        return null;
+    }
+}
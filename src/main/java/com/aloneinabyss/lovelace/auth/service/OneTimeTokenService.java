@@ -0,0 +1,114 @@
+package com.aloneinabyss.lovelace.auth.service;
+
+import com.aloneinabyss.lovelace.auth.model.OneTimeToken;
+import com.aloneinabyss.lovelace.security.TokenHashing;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Issues and consumes the single-use tokens sent by email.
+ * Tokens are looked up by the hash of their value, which is the document id, so every
+ * operation is a primary key or compound index match regardless of the number of users.
+ * A user holds at most one token per purpose, enforced by the unique user/purpose index.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OneTimeTokenService {
+    
+    /**
+     * A token created within this window counts as recent and blocks issuing another one
+     */
+    public static final Duration RECENT_TOKEN_WINDOW = Duration.ofMinutes(5);
+    
+    /**
+     * Random bytes per token (256 bits)
+     */
+    private static final int TOKEN_BYTES = 32;
+    
+    private final MongoTemplate mongoTemplate;
+    
+    /**
+     * Issue a new token for a user, replacing any token of the same purpose that is not recent.
+     *
+     * @param userId The user id
+     * @param purpose What the token may be used for
+     * @param timeToLive How long the token stays valid
+     * @return The raw token to send to the user, or empty if a recent token already exists
+     */
+    public Optional<String> issue(String userId, OneTimeToken.Purpose purpose, Duration timeToLive) {
+        String token = TokenHashing.randomId(TOKEN_BYTES);
+        LocalDateTime now = LocalDateTime.now();
+        
+        mongoTemplate.remove(Query.query(Criteria.where("userId").is(userId)
+                .and("purpose").is(purpose)
+                .and("createdAt").lte(now.minus(RECENT_TOKEN_WINDOW))), OneTimeToken.class);
+        
+        try {
+            mongoTemplate.insert(OneTimeToken.builder()
+                    .id(TokenHashing.sha256Base64Url(token))
+                    .purpose(purpose)
+                    .userId(userId)
+                    .createdAt(now)
+                    .expiresAt(now.plus(timeToLive))
+                    .build());
+        } catch (DuplicateKeyException e) {
+            // The remaining token of this user and purpose is recent, or a concurrent request just issued one
+            return Optional.empty();
+        }
+        
+        return Optional.of(token);
+    }
+    
+    /**
+     * Find a token without consuming it. The token may already have expired.
+     *
+     * @param token The raw token
+     * @param purpose The expected purpose
+     * @return The stored token, or empty if it does not exist or has another purpose
+     */
+    public Optional<OneTimeToken> find(String token, OneTimeToken.Purpose purpose) {
+        return Optional.ofNullable(mongoTemplate.findOne(byToken(token, purpose), OneTimeToken.class));
+    }
+    
+    /**
+     * Atomically delete and return an unexpired token, so it can be used at most once.
+     *
+     * @param token The raw token
+     * @param purpose The expected purpose
+     * @return The consumed token, or empty if it does not exist, has another purpose or has expired
+     */
+    public Optional<OneTimeToken> consume(String token, OneTimeToken.Purpose purpose) {
+        Query query = byToken(token, purpose);
+        query.addCriteria(Criteria.where("expiresAt").gt(LocalDateTime.now()));
+        
+        return Optional.ofNullable(mongoTemplate.findAndRemove(query, OneTimeToken.class));
+    }
+    
+    /**
+     * Check whether a token of the given purpose was issued to a user within {@link #RECENT_TOKEN_WINDOW}.
+     *
+     * @param userId The user id
+     * @param purpose The token purpose
+     * @return true if a recent token exists
+     */
+    public boolean hasRecent(String userId, OneTimeToken.Purpose purpose) {
+        return mongoTemplate.exists(Query.query(Criteria.where("userId").is(userId)
+                .and("purpose").is(purpose)
+                .and("createdAt").gt(LocalDateTime.now().minus(RECENT_TOKEN_WINDOW))), OneTimeToken.class);
+    }
+    
+    private static Query byToken(String token, OneTimeToken.Purpose purpose) {
+        return Query.query(Criteria.where("_id").is(TokenHashing.sha256Base64Url(token))
+                .and("purpose").is(purpose));
+    }
+}
@@ -0,0 +1,64 @@
+package com.aloneinabyss.lovelace.auth.service;
+
+import com.aloneinabyss.lovelace.auth.model.User;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+/**
+ * Re-hashes passwords stored with an outdated algorithm or cost after a successful login.
+ * Runs in the background so the login response never waits for the extra hash.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PasswordUpgradeService {
+    
+    private final PasswordEncoder passwordEncoder;
+    private final MongoTemplate mongoTemplate;
+    
+    /**
+     * Check whether a stored hash should be upgraded to the current encoding.
+     *
+     * @param encodedPassword The stored password hash
+     * @return true if the hash uses an outdated algorithm or cost
+     */
+    public boolean needsUpgrade(String encodedPassword) {
+        return passwordEncoder.upgradeEncoding(encodedPassword);
+    }
+    
+    /**
+     * Re-hash a verified password and store it, unless the password changed in the meantime.
+     * Only the hash is replaced: passwordChangedAt and the credential version stay untouched,
+     * so existing tokens remain valid.
+     *
+     * @param userId The user id
+     * @param rawPassword The password that was just verified
+     * @param previousHash The hash it was verified against
+     */
+    @Async
+    public void upgradeAsync(String userId, String rawPassword, String previousHash) {
+        try {
+            String upgradedHash = passwordEncoder.encode(rawPassword);
+            
+            long updated = mongoTemplate.updateFirst(
+                    Query.query(Criteria.where("_id").is(userId).and("password").is(previousHash)),
+                    Update.update("password", upgradedHash),
+                    User.class
+            ).getModifiedCount();
+            
+            if (updated > 0) {
+                log.info("Upgraded password hash for user {}", userId);
+            }
+        } catch (Exception e) {
+            // The old hash keeps working; the upgrade is retried on the next login
+            log.warn("Failed to upgrade password hash for user {}: {}", userId, e.getMessage());
+        }
+    }
+}
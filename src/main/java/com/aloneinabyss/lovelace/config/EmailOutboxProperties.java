@@ -0,0 +1,64 @@
+package com.aloneinabyss.lovelace.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "email.outbox")
+public class EmailOutboxProperties {
+    
+    /**
+     * Whether this instance delivers queued emails (emails are always queued)
+     */
+    private boolean enabled = true;
+    
+    /**
+     * Number of worker threads sending emails concurrently
+     */
+    private int workers = 4;
+    
+    /**
+     * Time in milliseconds between two polls of the outbox
+     */
+    private long pollInterval = 1000;
+    
+    /**
+     * Maximum number of emails a worker sends in one go over a single SMTP connection
+     */
+    private int batchSize = 20;
+    
+    /**
+     * Time in milliseconds a claimed email is reserved for its worker
+     * Emails of a crashed instance are retried once their lease ends
+     */
+    private long lease = 60_000;
+    
+    /**
+     * Delivery attempts before an email is dead-lettered
+     */
+    private int maxAttempts = 8;
+    
+    /**
+     * Delay in milliseconds before the first retry; doubles with every failed attempt
+     */
+    private long initialBackoff = 5_000;
+    
+    /**
+     * Maximum delay in milliseconds between two attempts
+     */
+    private long maxBackoff = 3_600_000;
+    
+    /**
+     * Length in milliseconds of the window in which this instance sends at most
+     * {@link #domainBatchSize} emails to the same recipient domain
+     */
+    private long domainInterval = 1000;
+    
+    /**
+     * Maximum number of emails to the same recipient domain sent per domain interval from this instance;
+     * they may go out in the same batch over one SMTP connection
+     */
+    private int domainBatchSize = 5;
+}
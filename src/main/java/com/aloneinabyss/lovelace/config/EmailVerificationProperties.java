@@ -0,0 +1,50 @@
+package com.aloneinabyss.lovelace.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "email.verification")
+public class EmailVerificationProperties {
+    
+    /**
+     * How verification links are issued and checked
+     */
+    private Mode mode = Mode.SIGNED;
+    
+    /**
+     * Base64-encoded HMAC secret used to sign verification links (SIGNED mode only)
+     * When empty, a key is derived from jwt.secret
+     */
+    private String secret;
+    
+    /**
+     * Minimum time in milliseconds between two verification emails to the same user
+     */
+    private long resendCooldown = 300_000;
+    
+    private Token token = new Token();
+    
+    @Data
+    public static class Token {
+        
+        /**
+         * Time in milliseconds a verification link stays valid
+         */
+        private long expiration = 86_400_000;
+    }
+    
+    public enum Mode {
+        /**
+         * Links carry a random token stored (hashed) in the one-time token collection
+         */
+        STORED,
+        
+        /**
+         * Links carry an HMAC-signed payload that is validated in memory, without a database lookup
+         */
+        SIGNED
+    }
+}
@@ -4,6 +4,9 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Data
 @Configuration
 @ConfigurationProperties(prefix = "jwt")
@@ -15,6 +18,56 @@ public class JwtProperties {
     
     private Long refreshExpiration;
     
+    /**
+     * Time in milliseconds after a refresh token is rotated during which presenting it again
+     * returns the same new tokens instead of being treated as reuse; 0 disables the window
+     */
+    private long refreshGraceWindow = 10_000;
+    
+    /**
+     * Format of newly issued refresh tokens
+     */
+    private RefreshTokenFormat refreshTokenFormat = RefreshTokenFormat.JWT;
+    
+    /**
+     * Maximum number of live sessions per user; logging in beyond it revokes the session
+     * refreshed least recently. 0 disables the limit
+     */
+    private int maxSessions = 10;
+    
+    /**
+     * Key id used to sign new tokens.
+     * The legacy {@code jwt.secret} is registered under the id "default".
+     */
+    private String activeKeyId = "default";
+    
+    /**
+     * Additional signing keys, each identified by its own key id (kid).
+     * Keys stay valid for verification while listed here, which allows rotating
+     * the active key without invalidating tokens signed with the previous one.
+     */
+    private List<SigningKey> keys = new ArrayList<>();
+    
+    /**
+     * Cache-Control max-age, in seconds, for the JWKS endpoint
+     */
+    private long jwksMaxAge = 300;
+    
+    /**
+     * How access tokens are turned into an authenticated principal
+     */
+    private AuthenticationMode authenticationMode = AuthenticationMode.DATABASE;
+    
+    /**
+     * In-process cache of verified access tokens
+     */
+    private TokenCache tokenCache = new TokenCache();
+    
+    /**
+     * In-process Bloom filter of blacklisted token ids
+     */
+    private BlacklistFilter blacklistFilter = new BlacklistFilter();
+    
     /**
      * Cookie configuration for refresh tokens
      */
@@ -30,6 +83,131 @@ public class JwtProperties {
         return refreshExpiration / 1000;
     }
     
+    /**
+     * Get the lifetime of the longest-lived token type.
+     * State kept to reject tokens issued before some event can be dropped once it has passed.
+     *
+     * @return The larger of the access and refresh token expiration, in milliseconds
+     */
+    public long getMaxTokenLifetime() {
+        return Math.max(expiration, refreshExpiration);
+    }
+    
+    @Data
+    public static class SigningKey {
+        /**
+         * Key id written to the "kid" header of tokens signed with this key
+         */
+        private String id;
+        
+        /**
+         * Signature algorithm family of this key
+         */
+        private Algorithm algorithm = Algorithm.HMAC;
+        
+        /**
+         * Base64-encoded HMAC secret (HMAC keys only)
+         */
+        private String secret;
+        
+        /**
+         * Base64-encoded PKCS#8 private key (asymmetric keys only)
+         * Only required for the active key; omit it for keys kept for verification
+         */
+        private String privateKey;
+        
+        /**
+         * Base64-encoded X.509 public key (asymmetric keys only)
+         * Published through the JWKS endpoint
+         */
+        private String publicKey;
+    }
+    
+    @Data
+    public static class TokenCache {
+        /**
+         * Whether verified access tokens are cached between requests
+         */
+        private boolean enabled = true;
+        
+        /**
+         * Maximum number of cached tokens
+         */
+        private long maximumSize = 10_000;
+        
+        /**
+         * Upper bound in milliseconds for how long an entry is kept, regardless of the token expiration.
+         * Bounds how long a password change made on another instance can go unnoticed.
+         */
+        private long maxTtl = 60_000;
+    }
+    
+    @Data
+    public static class BlacklistFilter {
+        /**
+         * Whether blacklist checks consult the local filter before Redis
+         */
+        private boolean enabled = true;
+        
+        /**
+         * Minimum number of token ids the filter is sized for; it grows with the blacklist on rebuild
+         */
+        private long expectedInsertions = 100_000;
+        
+        /**
+         * Target false-positive probability at the expected size
+         */
+        private double falsePositiveProbability = 0.01;
+        
+        /**
+         * Interval in milliseconds between full rebuilds from Redis.
+         * Rebuilds drop expired ids and recover from missed pub/sub messages.
+         */
+        private long rebuildInterval = 300_000;
+    }
+    
+    public enum AuthenticationMode {
+        /**
+         * Load the user from the database and check passwordChangedAt on every (uncached) request
+         */
+        DATABASE,
+        
+        /**
+         * Build the principal from the userId and roles claims; revocation relies on the
+         * credential version claim instead of a database lookup
+         */
+        CLAIMS
+    }
+    
+    public enum RefreshTokenFormat {
+        /**
+         * Signed JWT carrying the same claims as the access token
+         */
+        JWT,
+        
+        /**
+         * Random 32-byte token whose session metadata is stored in Redis under its digest
+         */
+        OPAQUE
+    }
+    
+    public enum Algorithm {
+        /**
+         * Shared-secret HMAC (HS256/HS384/HS512 depending on the secret length)
+         */
+        HMAC,
+        
+        /**
+         * ECDSA using P-256 and SHA-256
+         */
+        ES256,
+        
+        /**
+         * Edwards-curve signatures using Ed25519
+         */
+        EDDSA
+    }
+    
     @Data
     public static class Cookie {
         /**
@@ -0,0 +1,45 @@
+package com.aloneinabyss.lovelace.config;
+
+import com.aloneinabyss.lovelace.shared.service.PooledJavaMailSender;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.mail.MailProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.util.Properties;
+
+@Configuration
+public class MailConfig {
+    
+    /**
+     * Mail sender configured from the spring.mail.* properties like the auto-configured one,
+     * but keeping SMTP connections open between sends unless email.smtp-pool.enabled is false.
+     */
+    @Bean
+    public JavaMailSenderImpl mailSender(MailProperties mailProperties,
+                                         SmtpPoolProperties smtpPoolProperties,
+                                         MeterRegistry meterRegistry) {
+        JavaMailSenderImpl mailSender = smtpPoolProperties.isEnabled()
+                ? new PooledJavaMailSender(smtpPoolProperties, meterRegistry)
+                : new JavaMailSenderImpl();
+        
+        mailSender.setHost(mailProperties.getHost());
+        if (mailProperties.getPort() != null) {
+            mailSender.setPort(mailProperties.getPort());
+        }
+        mailSender.setUsername(mailProperties.getUsername());
+        mailSender.setPassword(mailProperties.getPassword());
+        mailSender.setProtocol(mailProperties.getProtocol());
+        if (mailProperties.getDefaultEncoding() != null) {
+            mailSender.setDefaultEncoding(mailProperties.getDefaultEncoding().name());
+        }
+        if (!mailProperties.getProperties().isEmpty()) {
+            Properties javaMailProperties = new Properties();
+            javaMailProperties.putAll(mailProperties.getProperties());
+            mailSender.setJavaMailProperties(javaMailProperties);
+        }
+        
+        return mailSender;
+    }
+}
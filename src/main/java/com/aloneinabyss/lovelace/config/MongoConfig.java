@@ -0,0 +1,25 @@
+package com.aloneinabyss.lovelace.config;
+
+import com.aloneinabyss.lovelace.auth.repository.UserAuthViewCodec;
+import com.aloneinabyss.lovelace.auth.repository.UserCodec;
+import com.mongodb.MongoClientSettings;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MongoConfig {
+    
+    /**
+     * Register the hand-written codecs used by the authentication queries in UserRepositoryImpl.
+     * Spring Data repositories and MongoTemplate keep using MappingMongoConverter.
+     */
+    @Bean
+    public MongoClientSettingsBuilderCustomizer userCodecCustomizer() {
+        return settings -> settings.codecRegistry(CodecRegistries.fromRegistries(
+                CodecRegistries.fromCodecs(new UserCodec(), new UserAuthViewCodec()),
+                MongoClientSettings.getDefaultCodecRegistry()
+        ));
+    }
+}
@@ -0,0 +1,64 @@
+package com.aloneinabyss.lovelace.config;
+
+import com.aloneinabyss.lovelace.auth.model.OneTimeToken;
+import com.aloneinabyss.lovelace.auth.model.User;
+import com.aloneinabyss.lovelace.shared.model.OutboxEmail;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Creates the indexes declared on documents with {@code @Indexed}, since automatic index creation
+ * is disabled by default. Runs before the other startup runners so that the unique indexes
+ * registration relies on exist before any user is written. The TTL indexes on one-time tokens
+ * and on sent and dead-lettered emails let MongoDB delete them on its own.
+ * <p>
+ * Startup fails if an index cannot be created, e.g. because existing users only differ in case:
+ * without the unique indexes, registration would silently insert duplicate accounts.
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@RequiredArgsConstructor
+public class MongoIndexInitializer implements CommandLineRunner {
+    
+    private static final List<Class<?>> INDEXED_DOCUMENTS = List.of(User.class, OneTimeToken.class, OutboxEmail.class);
+    
+    private final MongoTemplate mongoTemplate;
+    private final MongoMappingContext mongoMappingContext;
+    
+    @Override
+    public void run(String... args) {
+        IndexResolver indexResolver = new MongoPersistentEntityIndexResolver(mongoMappingContext);
+        
+        for (Class<?> documentClass : INDEXED_DOCUMENTS) {
+            String collectionName = mongoTemplate.getCollectionName(documentClass);
+            IndexOperations indexOperations = mongoTemplate.indexOps(documentClass);
+            
+            indexResolver.resolveIndexFor(documentClass).forEach(index -> {
+                try {
+                    indexOperations.createIndex(index);
+                } catch (Exception e) {
+                    // Uniqueness, the resend cooldown and the TTL cleanup depend on these indexes,
+                    // so refuse to start without them
+                    throw new IllegalStateException(String.format(
+                            "Failed to create index %s on %s; if it is a unique index, resolve the documents "
+                                    + "that conflict with it (e.g. users whose username or email only differ in case) "
+                                    + "and restart: %s",
+                            index.getIndexOptions().get("name"), collectionName, e.getMessage()), e);
+                }
+            });
+            log.info("MongoDB indexes ensured for {}", collectionName);
+        }
+    }
+}
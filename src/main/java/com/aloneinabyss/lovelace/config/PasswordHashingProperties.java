@@ -0,0 +1,60 @@
+package com.aloneinabyss.lovelace.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "password-hashing")
+public class PasswordHashingProperties {
+    
+    /**
+     * Number of threads hashing passwords; 0 uses the number of available processors
+     */
+    private int threads = 0;
+    
+    /**
+     * Maximum number of hashing requests waiting for a thread
+     */
+    private int queueCapacity = 64;
+    
+    /**
+     * Maximum time in milliseconds a request waits for its hash before being rejected
+     */
+    private long maxWait = 2_000;
+    
+    /**
+     * Retry-After value in seconds sent when a request is rejected
+     */
+    private long retryAfter = 1;
+    
+    /**
+     * BCrypt strength for new hashes; 0 calibrates it at startup to match targetHashTime
+     */
+    private int strength = 0;
+    
+    /**
+     * Target time in milliseconds for a single hash when calibrating
+     */
+    private long targetHashTime = 80;
+    
+    /**
+     * Lowest strength calibration may pick, regardless of the machine's speed
+     */
+    private int minStrength = 10;
+    
+    /**
+     * Highest strength calibration may pick
+     */
+    private int maxStrength = 16;
+    
+    /**
+     * Get the effective number of hashing threads.
+     *
+     * @return Configured thread count, or the number of available processors if not set
+     */
+    public int getEffectiveThreads() {
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+}
@@ -0,0 +1,32 @@
+package com.aloneinabyss.lovelace.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "principal-cache")
+public class PrincipalCacheProperties {
+    
+    /**
+     * Whether user principals are cached between requests
+     */
+    private boolean enabled = true;
+    
+    /**
+     * Maximum number of principals kept in memory on each instance
+     */
+    private long localMaximumSize = 10_000;
+    
+    /**
+     * Time in milliseconds a principal stays in the in-memory cache
+     * Bounds staleness if an invalidation message is missed
+     */
+    private long localTtl = 30_000;
+    
+    /**
+     * Time in milliseconds a principal stays in Redis
+     */
+    private long redisTtl = 600_000;
+}
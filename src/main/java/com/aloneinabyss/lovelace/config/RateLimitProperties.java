@@ -0,0 +1,58 @@
+package com.aloneinabyss.lovelace.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "rate-limit")
+public class RateLimitProperties {
+    
+    /**
+     * Whether the rate-limited routes are enforced
+     */
+    private boolean enabled = true;
+    
+    /**
+     * Maximum number of clients or identities remembered as blocked by each instance
+     */
+    private int localMaxEntries = 65_536;
+    
+    /**
+     * Rate-limited routes by name; the name is part of the Redis bucket keys
+     */
+    private Map<String, Route> routes = new LinkedHashMap<>();
+    
+    @Data
+    public static class Route {
+        /**
+         * Request path of the route; only POST requests are limited
+         */
+        private String path;
+        
+        /**
+         * Field of the JSON request body identifying the account (e.g. "email"), limited
+         * separately from the client IP; empty to limit by client IP only
+         */
+        private String identityField;
+        
+        /**
+         * Requests a single client IP can make in a burst
+         */
+        private long ipCapacity = 20;
+        
+        /**
+         * Requests that can be made for a single identity in a burst
+         */
+        private long identityCapacity = 5;
+        
+        /**
+         * Time in milliseconds for an exhausted bucket to refill completely
+         */
+        private long refillPeriod = 60_000;
+    }
+}
@@ -1,35 +1,39 @@
 package com.aloneinabyss.lovelace.config;
 
+import com.aloneinabyss.lovelace.security.BoundedPasswordEncoder;
 import com.aloneinabyss.lovelace.security.JwtAuthenticationEntryPoint;
 import com.aloneinabyss.lovelace.security.JwtAuthenticationFilter;
+import com.aloneinabyss.lovelace.security.PasswordHashCalibrator;
+import com.aloneinabyss.lovelace.security.RateLimitFilter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.AuthenticationProvider;
-import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
-import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.web.cors.CorsConfigurationSource;
 
+import java.util.Map;
+
 @Configuration
 @EnableWebSecurity
 @EnableMethodSecurity
 @RequiredArgsConstructor
 public class SecurityConfig {
     
+    private static final String BCRYPT_ID = "bcrypt";
+    
     private final JwtAuthenticationFilter jwtAuthenticationFilter;
+    private final RateLimitFilter rateLimitFilter;
     private final JwtAuthenticationEntryPoint jwtAuthenticationEntryPoint;
-    private final UserDetailsService userDetailsService;
     private final CorsConfigurationSource corsConfigurationSource;
     
     @Bean
@@ -38,8 +42,10 @@ public class SecurityConfig {
                 .cors(cors -> cors.configurationSource(corsConfigurationSource))
                 .csrf(AbstractHttpConfigurer::disable)
                 .authorizeHttpRequests(auth -> auth
-                        .requestMatchers("/api/auth/logout", "/api/auth/change-password").authenticated()
+                        .requestMatchers("/api/auth/logout", "/api/auth/logout-all", "/api/auth/change-password").authenticated()
+                        .requestMatchers("/api/auth/sessions", "/api/auth/sessions/**").authenticated()
                         .requestMatchers("/api/auth/**").permitAll()
+                        .requestMatchers("/.well-known/jwks.json").permitAll()
                         .requestMatchers("/actuator/health").permitAll()
                         .requestMatchers("/actuator/**").hasRole("ADMIN")
                         .anyRequest().authenticated()
@@ -50,27 +56,32 @@ public class SecurityConfig {
                 .exceptionHandling(exception -> exception
                         .authenticationEntryPoint(jwtAuthenticationEntryPoint)
                 )
-                .authenticationProvider(authenticationProvider())
-                .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
+                .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class)
+                .addFilterBefore(rateLimitFilter, JwtAuthenticationFilter.class);
         
         return http.build();
     }
     
+    /**
+     * BCrypt encoder running on a bounded hashing pool, so that password hashing cannot
+     * exhaust the request threads.
+     * New hashes are prefixed with "{bcrypt}" and use a strength calibrated for this machine;
+     * hashes without a prefix are still verified as BCrypt and upgraded on the next login.
+     */
     @Bean
-    public AuthenticationProvider authenticationProvider() {
-        DaoAuthenticationProvider authProvider = new DaoAuthenticationProvider(userDetailsService);
-        authProvider.setPasswordEncoder(passwordEncoder());
-        return authProvider;
-    }
-    
-    @Bean
-    public AuthenticationManager authenticationManager(AuthenticationConfiguration config) throws Exception {
-        return config.getAuthenticationManager();
-    }
-    
-    @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(PasswordHashingProperties passwordHashingProperties, MeterRegistry meterRegistry) {
+        int strength = passwordHashingProperties.getStrength() > 0
+                ? passwordHashingProperties.getStrength()
+                : PasswordHashCalibrator.calibrateBCryptStrength(
+                        passwordHashingProperties.getTargetHashTime(),
+                        passwordHashingProperties.getMinStrength(),
+                        passwordHashingProperties.getMaxStrength());
+        
+        DelegatingPasswordEncoder delegatingPasswordEncoder = new DelegatingPasswordEncoder(
+                BCRYPT_ID, Map.of(BCRYPT_ID, new BCryptPasswordEncoder(strength)));
+        delegatingPasswordEncoder.setDefaultPasswordEncoderForMatches(new BCryptPasswordEncoder());
+        
+        return new BoundedPasswordEncoder(delegatingPasswordEncoder, passwordHashingProperties, meterRegistry);
     }
     
 }
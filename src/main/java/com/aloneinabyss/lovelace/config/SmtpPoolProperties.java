@@ -0,0 +1,31 @@
+package com.aloneinabyss.lovelace.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "email.smtp-pool")
+public class SmtpPoolProperties {
+    
+    /**
+     * Whether SMTP connections are kept open and reused between sends
+     */
+    private boolean enabled = true;
+    
+    /**
+     * Maximum number of SMTP connections open at the same time
+     */
+    private int maxConnections = 4;
+    
+    /**
+     * Time in milliseconds an unused connection stays open
+     */
+    private long idleTimeout = 30_000;
+    
+    /**
+     * Messages sent over one connection before it is replaced
+     */
+    private int maxMessagesPerConnection = 100;
+}
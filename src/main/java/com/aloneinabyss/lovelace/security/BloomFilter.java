@@ -0,0 +1,115 @@
+package com.aloneinabyss.lovelace.security;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free Bloom filter over strings.
+ * Answers "definitely absent" or "possibly present"; elements cannot be removed, so a filter
+ * is periodically replaced by a freshly built one once its elements have expired.
+ * <p>
+ * Bit positions are derived from two 64-bit hashes (Kirsch-Mitzenmacher double hashing).
+ */
+public class BloomFilter {
+    
+    private final AtomicLongArray words;
+    private final long bitSize;
+    private final int hashFunctions;
+    private final LongAdder insertions = new LongAdder();
+    
+    /**
+     * Create a filter sized for an expected number of elements and false-positive probability.
+     *
+     * @param expectedInsertions Number of elements the filter should hold
+     * @param falsePositiveProbability Target false-positive probability at that size (e.g., 0.01)
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveProbability) {
+        long elements = Math.max(1, expectedInsertions);
+        long bits = (long) Math.ceil(-elements * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, (bits + 63) / 64);
+        
+        this.words = new AtomicLongArray(words);
+        this.bitSize = (long) words * 64;
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bitSize / elements * Math.log(2)));
+    }
+    
+    /**
+     * Add an element to the filter.
+     *
+     * @param value The element
+     */
+    public void put(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        long hash1 = hash(bytes, 0x9E3779B97F4A7C15L);
+        long hash2 = hash(bytes, 0xC2B2AE3D27D4EB4FL);
+        
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitSize);
+            long mask = 1L << bit;
+            words.getAndAccumulate((int) (bit >>> 6), mask, (current, update) -> current | update);
+        }
+        insertions.increment();
+    }
+    
+    /**
+     * Check whether an element may have been added.
+     *
+     * @param value The element
+     * @return false if the element was definitely never added, true if it possibly was
+     */
+    public boolean mightContain(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        long hash1 = hash(bytes, 0x9E3779B97F4A7C15L);
+        long hash2 = hash(bytes, 0xC2B2AE3D27D4EB4FL);
+        
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitSize);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * @return Number of bits in the filter
+     */
+    public long getBitSize() {
+        return bitSize;
+    }
+    
+    /**
+     * @return Number of elements added so far (duplicates included)
+     */
+    public long getInsertions() {
+        return insertions.sum();
+    }
+    
+    /**
+     * Estimate the current false-positive probability from the number of insertions.
+     *
+     * @return Expected probability that an absent element is reported as possibly present
+     */
+    public double getExpectedFalsePositiveProbability() {
+        return Math.pow(1 - Math.exp(-hashFunctions * (double) getInsertions() / bitSize), hashFunctions);
+    }
+    
+    /**
+     * 64-bit hash of the input: FNV-1a with a seeded offset, finished with the MurmurHash3 mixer.
+     */
+    private static long hash(byte[] bytes, long seed) {
+        long hash = 0xCBF29CE484222325L ^ seed;
+        for (byte b : bytes) {
+            hash ^= b;
+            hash *= 0x100000001B3L;
+        }
+        
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,140 @@
+package com.aloneinabyss.lovelace.security;
+
+import com.aloneinabyss.lovelace.config.PasswordHashingProperties;
+import com.aloneinabyss.lovelace.shared.exception.ErrorCode;
+import com.aloneinabyss.lovelace.shared.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Password encoder that runs the hashing of a delegate on a dedicated, bounded thread pool.
+ * Request threads only wait for the result, so a burst of logins cannot occupy every
+ * servlet thread and starve cheap endpoints such as token refresh.
+ * <p>
+ * When the queue is full, or a hash is not computed within the maximum wait, the request is
+ * rejected with a {@link ServiceUnavailableException} (503 with Retry-After) instead of queueing further.
+ * Queue depth, wait time and rejections are exposed as "password.hashing.*" metrics.
+ */
+@Slf4j
+public class BoundedPasswordEncoder implements PasswordEncoder, DisposableBean {
+    
+    private final PasswordEncoder delegate;
+    private final ThreadPoolExecutor executor;
+    private final long maxWaitMillis;
+    private final long retryAfterSeconds;
+    
+    private final Timer waitTimer;
+    private final Counter queueFullRejections;
+    private final Counter timeoutRejections;
+    
+    public BoundedPasswordEncoder(PasswordEncoder delegate,
+                                  PasswordHashingProperties properties,
+                                  MeterRegistry meterRegistry) {
+        int threads = properties.getEffectiveThreads();
+        AtomicInteger threadCount = new AtomicInteger();
+        
+        this.delegate = delegate;
+        this.maxWaitMillis = properties.getMaxWait();
+        this.retryAfterSeconds = properties.getRetryAfter();
+        this.executor = new ThreadPoolExecutor(
+                threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hashing-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        
+        this.waitTimer = Timer.builder("password.hashing.wait")
+                .description("Time from submitting a password hash until it completes, including queueing")
+                .register(meterRegistry);
+        this.queueFullRejections = rejectionCounter(meterRegistry, "queue_full");
+        this.timeoutRejections = rejectionCounter(meterRegistry, "timeout");
+        Gauge.builder("password.hashing.queue.depth", executor, pool -> pool.getQueue().size())
+                .description("Password hashing requests waiting for a thread")
+                .register(meterRegistry);
+        Gauge.builder("password.hashing.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Password hashing threads currently busy")
+                .register(meterRegistry);
+        
+        log.info("Password hashing pool initialized (threads={}, queueCapacity={}, maxWait={}ms)",
+                threads, properties.getQueueCapacity(), maxWaitMillis);
+    }
+    
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return execute(() -> delegate.encode(rawPassword));
+    }
+    
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return execute(() -> delegate.matches(rawPassword, encodedPassword));
+    }
+    
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+    
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+    
+    private <T> T execute(Callable<T> task) {
+        long start = System.nanoTime();
+        Future<T> future;
+        
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            queueFullRejections.increment();
+            log.warn("Password hashing queue full, rejecting request");
+            throw new ServiceUnavailableException(ErrorCode.SERVICE_BUSY, retryAfterSeconds);
+        }
+        
+        try {
+            return future.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Drops the task if it is still queued; a hash already in progress runs to completion
+            future.cancel(false);
+            timeoutRejections.increment();
+            log.warn("Password hashing did not complete within {}ms, rejecting request", maxWaitMillis);
+            throw new ServiceUnavailableException(ErrorCode.SERVICE_BUSY, retryAfterSeconds);
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException(ErrorCode.SERVICE_BUSY, retryAfterSeconds);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        } finally {
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+    
+    private static Counter rejectionCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("password.hashing.rejections")
+                .description("Password hashing requests rejected to shed load")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
@@ -1,6 +1,10 @@
 package com.aloneinabyss.lovelace.security;
 
+import com.aloneinabyss.lovelace.config.JwtProperties;
+import com.aloneinabyss.lovelace.security.service.CredentialVersionService;
+import com.aloneinabyss.lovelace.security.service.RevocationEpochService;
 import com.aloneinabyss.lovelace.security.service.TokenBlacklistService;
+import com.aloneinabyss.lovelace.security.service.UserDetailsServiceImpl;
 import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.MalformedJwtException;
 import io.jsonwebtoken.security.SignatureException;
@@ -14,7 +18,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -28,7 +31,11 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     
     private final JwtTokenProvider jwtTokenProvider;
     private final TokenBlacklistService tokenBlacklistService;
-    private final UserDetailsService userDetailsService;
+    private final UserDetailsServiceImpl userDetailsService;
+    private final VerifiedTokenCache verifiedTokenCache;
+    private final CredentialVersionService credentialVersionService;
+    private final RevocationEpochService revocationEpochService;
+    private final JwtProperties jwtProperties;
     
     @Override
     protected void doFilterInternal(
@@ -49,23 +56,34 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             // Extract token from Authorization header
             final String jwt = authHeader.substring(7).trim();
             
+            // Reuse a previous verification of this exact token when possible; otherwise
+            // verify and parse the token once and reuse the result for every check below
+            final VerifiedTokenCache.Entry cachedEntry = verifiedTokenCache.get(jwt);
+            final ParsedToken parsedToken = cachedEntry != null
+                    ? cachedEntry.getParsedToken()
+                    : jwtTokenProvider.parseToken(jwt);
+            request.setAttribute(ParsedToken.REQUEST_ATTRIBUTE, parsedToken);
+            
             // Check if token is blacklisted
-            if (tokenBlacklistService.isBlacklisted(jwt)) {
+            if (tokenBlacklistService.isBlacklisted(parsedToken)) {
                 log.warn("Attempt to use blacklisted token");
                 filterChain.doFilter(request, response);
                 return;
             }
             
-            // Extract claims from token
-            final String username = jwtTokenProvider.extractUsername(jwt);
+            final String username = parsedToken.getSubject();
             
             // Authenticate if username is valid and no existing authentication
             if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                // Load user details from database to get passwordChangedAt timestamp
-                UserPrincipal userPrincipal = (UserPrincipal) userDetailsService.loadUserByUsername(username);
+                UserPrincipal userPrincipal = cachedEntry != null
+                        ? cachedEntry.getUserPrincipal()
+                        : resolvePrincipal(parsedToken);
                 
-                // Validate token with password change timestamp check
-                if (jwtTokenProvider.validateToken(jwt, userPrincipal, userPrincipal.getPasswordChangedAt())) {
+                // Credential version and revocation epoch checks are in-memory lookups,
+                // so they also run on cache hits
+                if (userPrincipal != null
+                        && credentialVersionService.isCurrent(parsedToken)
+                        && !revocationEpochService.isRevoked(parsedToken)) {
                     UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
                             userPrincipal,
                             null,
@@ -99,4 +117,35 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         // Always continue the filter chain
         filterChain.doFilter(request, response);
     }
+    
+    /**
+     * Resolve the principal for a token that is not in the verified token cache.
+     * In claims mode the principal is built from the token alone; otherwise the user is loaded
+     * and the token is validated against the password change timestamp.
+     * Successfully validated tokens are cached so later requests can skip this work.
+     *
+     * @param parsedToken The verified token
+     * @return The authenticated principal, or null if the token is no longer valid for the user
+     */
+    private UserPrincipal resolvePrincipal(ParsedToken parsedToken) {
+        UserPrincipal userPrincipal;
+        
+        if (jwtProperties.getAuthenticationMode() == JwtProperties.AuthenticationMode.CLAIMS
+                && parsedToken.getUserId() != null) {
+            userPrincipal = UserPrincipal.fromToken(parsedToken);
+        } else {
+            // Load user details to get the passwordChangedAt timestamp, by primary key when the token carries it
+            userPrincipal = parsedToken.getUserId() != null
+                    ? userDetailsService.loadUserById(parsedToken.getUserId())
+                    : (UserPrincipal) userDetailsService.loadUserByUsername(parsedToken.getSubject());
+            
+            // Validate token with password change timestamp check
+            if (!jwtTokenProvider.validateToken(parsedToken, userPrincipal, userPrincipal.getPasswordChangedAt())) {
+                return null;
+            }
+        }
+        
+        verifiedTokenCache.put(parsedToken, userPrincipal);
+        return userPrincipal;
+    }
 }
@@ -0,0 +1,254 @@
+package com.aloneinabyss.lovelace.security;
+
+import com.aloneinabyss.lovelace.config.JwtProperties;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.LocatorAdapter;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SignatureException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.SecretKey;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the decoded JWT signing keys, indexed by key id (kid).
+ * Keys are decoded once at startup; tokens are signed with the active key and
+ * verified by looking up the "kid" header in an immutable map, so the hot path
+ * neither decodes secrets nor takes locks.
+ * <p>
+ * HMAC keys are shared secrets and can only be verified by this service.
+ * ES256 and EdDSA keys are asymmetric: their public halves are exposed as JWKs
+ * so that other services can verify access tokens locally.
+ */
+@Slf4j
+@Component
+public class JwtKeyring extends LocatorAdapter<Key> {
+    
+    /**
+     * Key id under which the legacy {@code jwt.secret} is registered.
+     * Tokens without a "kid" header were signed with this key.
+     */
+    public static final String DEFAULT_KEY_ID = "default";
+    
+    /**
+     * Length of a raw Ed25519 public key; the X.509 encoding ends with these bytes
+     */
+    private static final int ED25519_KEY_LENGTH = 32;
+    
+    private final Map<String, Key> verificationKeys;
+    private final List<Map<String, Object>> publicJwks;
+    private final String activeKeyId;
+    private final Key activeSigningKey;
+    
+    public JwtKeyring(JwtProperties jwtProperties) {
+        Map<String, Key> decodedKeys = new HashMap<>();
+        List<Map<String, Object>> jwks = new ArrayList<>();
+        Key signingKey = null;
+        
+        if (jwtProperties.getSecret() != null && !jwtProperties.getSecret().isBlank()) {
+            decodedKeys.put(DEFAULT_KEY_ID, decodeSecret(jwtProperties.getSecret(), "jwt.secret"));
+        }
+        
+        List<JwtProperties.SigningKey> keys = jwtProperties.getKeys();
+        for (int i = 0; i < keys.size(); i++) {
+            JwtProperties.SigningKey signingKeyConfig = keys.get(i);
+            String keyId = signingKeyConfig.getId();
+            
+            if (keyId == null || keyId.isBlank()) {
+                throw new IllegalStateException("Missing JWT key id: jwt.keys[" + i + "].id must be set");
+            }
+            
+            boolean active = keyId.equals(jwtProperties.getActiveKeyId());
+            Key verificationKey;
+            
+            if (signingKeyConfig.getAlgorithm() == JwtProperties.Algorithm.HMAC) {
+                verificationKey = decodeSecret(signingKeyConfig.getSecret(), "jwt.keys[" + i + "].secret");
+            } else {
+                PublicKey publicKey = decodePublicKey(signingKeyConfig);
+                verificationKey = publicKey;
+                jwks.add(toJwk(keyId, signingKeyConfig.getAlgorithm(), publicKey));
+                
+                if (active) {
+                    signingKey = decodePrivateKey(signingKeyConfig);
+                }
+            }
+            
+            if (decodedKeys.putIfAbsent(keyId, verificationKey) != null) {
+                throw new IllegalStateException("Duplicate JWT key id: " + keyId);
+            }
+        }
+        
+        this.verificationKeys = Map.copyOf(decodedKeys);
+        this.publicJwks = List.copyOf(jwks);
+        this.activeKeyId = jwtProperties.getActiveKeyId();
+        
+        if (activeKeyId == null || activeKeyId.isBlank()) {
+            throw new IllegalStateException("Missing JWT active key id: jwt.active-key-id must be set");
+        }
+        
+        // HMAC keys sign with the same key they verify with
+        if (signingKey == null && verificationKeys.get(activeKeyId) instanceof SecretKey) {
+            signingKey = verificationKeys.get(activeKeyId);
+        }
+        
+        if (signingKey == null && DEFAULT_KEY_ID.equals(activeKeyId) && !decodedKeys.containsKey(DEFAULT_KEY_ID)) {
+            throw new IllegalStateException("Missing JWT secret: jwt.secret (JWT_SECRET) must be set "
+                    + "unless jwt.active-key-id names a key listed under jwt.keys");
+        }
+        
+        if (signingKey == null) {
+            throw new IllegalStateException("No JWT signing key configured for active key id: " + activeKeyId);
+        }
+        
+        this.activeSigningKey = signingKey;
+        
+        log.info("JWT keyring initialized with key ids {} (active: {}, published: {})",
+                verificationKeys.keySet(), activeKeyId, publicJwks.size());
+    }
+    
+    public String getActiveKeyId() {
+        return activeKeyId;
+    }
+    
+    /**
+     * Get the key used to sign new tokens: a SecretKey for HMAC or a PrivateKey for ES256/EdDSA.
+     *
+     * @return The active signing key
+     */
+    public Key getActiveSigningKey() {
+        return activeSigningKey;
+    }
+    
+    /**
+     * Get the public keys of all asymmetric signing keys, formatted as JWKs (RFC 7517).
+     * HMAC secrets are never included.
+     *
+     * @return Immutable list of JWK objects
+     */
+    public List<Map<String, Object>> getPublicJwks() {
+        return publicJwks;
+    }
+    
+    /**
+     * Resolve the verification key for a signed token from its "kid" header.
+     *
+     * @param header The JWS header of the token being parsed
+     * @return The key registered under the token's key id
+     * @throws SignatureException if the key id is unknown
+     */
+    @Override
+    protected Key locate(JwsHeader header) {
+        String keyId = header.getKeyId() != null ? header.getKeyId() : DEFAULT_KEY_ID;
+        Key key = verificationKeys.get(keyId);
+        
+        if (key == null) {
+            throw new SignatureException("Unknown JWT signing key id: " + keyId);
+        }
+        
+        return key;
+    }
+    
+    private static Key decodeSecret(String secret, String propertyName) {
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalStateException("Missing JWT secret: " + propertyName + " must be set");
+        }
+        
+        try {
+            return Keys.hmacShaKeyFor(Decoders.BASE64.decode(secret));
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("Invalid JWT secret in " + propertyName + ": " + e.getMessage(), e);
+        }
+    }
+    
+    private static PublicKey decodePublicKey(JwtProperties.SigningKey signingKeyConfig) {
+        if (signingKeyConfig.getPublicKey() == null) {
+            throw new IllegalStateException("Missing public key for JWT key id: " + signingKeyConfig.getId());
+        }
+        
+        try {
+            return keyFactory(signingKeyConfig.getAlgorithm())
+                    .generatePublic(new X509EncodedKeySpec(Decoders.BASE64.decode(signingKeyConfig.getPublicKey())));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Invalid public key for JWT key id: " + signingKeyConfig.getId(), e);
+        }
+    }
+    
+    private static PrivateKey decodePrivateKey(JwtProperties.SigningKey signingKeyConfig) {
+        if (signingKeyConfig.getPrivateKey() == null) {
+            throw new IllegalStateException("Missing private key for active JWT key id: " + signingKeyConfig.getId());
+        }
+        
+        try {
+            return keyFactory(signingKeyConfig.getAlgorithm())
+                    .generatePrivate(new PKCS8EncodedKeySpec(Decoders.BASE64.decode(signingKeyConfig.getPrivateKey())));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Invalid private key for JWT key id: " + signingKeyConfig.getId(), e);
+        }
+    }
+    
+    private static KeyFactory keyFactory(JwtProperties.Algorithm algorithm) throws GeneralSecurityException {
+        return KeyFactory.getInstance(algorithm == JwtProperties.Algorithm.ES256 ? "EC" : "Ed25519");
+    }
+    
+    private static Map<String, Object> toJwk(String keyId, JwtProperties.Algorithm algorithm, PublicKey publicKey) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        Map<String, Object> jwk = new LinkedHashMap<>();
+        
+        if (algorithm == JwtProperties.Algorithm.ES256) {
+            ECPublicKey ecPublicKey = (ECPublicKey) publicKey;
+            int coordinateLength = (ecPublicKey.getParams().getCurve().getField().getFieldSize() + 7) / 8;
+            
+            jwk.put("kty", "EC");
+            jwk.put("crv", "P-256");
+            jwk.put("x", encoder.encodeToString(toFixedLength(ecPublicKey.getW().getAffineX(), coordinateLength)));
+            jwk.put("y", encoder.encodeToString(toFixedLength(ecPublicKey.getW().getAffineY(), coordinateLength)));
+            jwk.put("alg", "ES256");
+        } else {
+            byte[] encoded = publicKey.getEncoded();
+            
+            jwk.put("kty", "OKP");
+            jwk.put("crv", "Ed25519");
+            jwk.put("x", encoder.encodeToString(
+                    Arrays.copyOfRange(encoded, encoded.length - ED25519_KEY_LENGTH, encoded.length)));
+            jwk.put("alg", "EdDSA");
+        }
+        
+        jwk.put("use", "sig");
+        jwk.put("kid", keyId);
+        return Collections.unmodifiableMap(jwk);
+    }
+    
+    /**
+     * Encode an EC coordinate as an unsigned big-endian byte array of the curve's field length.
+     */
+    private static byte[] toFixedLength(BigInteger value, int length) {
+        byte[] bytes = value.toByteArray();
+        
+        if (bytes.length == length) {
+            return bytes;
+        }
+        
+        byte[] result = new byte[length];
+        int copyLength = Math.min(bytes.length, length);
+        System.arraycopy(bytes, bytes.length - copyLength, result, length - copyLength, copyLength);
+        return result;
+    }
+}
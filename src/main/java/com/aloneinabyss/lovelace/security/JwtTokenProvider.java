@@ -2,99 +2,87 @@ package com.aloneinabyss.lovelace.security;
 
 import com.aloneinabyss.lovelace.config.JwtProperties;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.io.Decoders;
-import io.jsonwebtoken.security.Keys;
-import lombok.RequiredArgsConstructor;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
-import javax.crypto.SecretKey;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Component
-@RequiredArgsConstructor
 public class JwtTokenProvider {
     
-    private final JwtProperties jwtProperties;
-    
-    public String extractUsername(String token) {
-        return extractClaim(token, Claims::getSubject);
-    }
-    
-    public String extractUserId(String token) {
-        return extractClaim(token, claims -> claims.get("userId", String.class));
-    }
+    /**
+     * Random bytes in the "jti" claim; 96 bits keep ids unique while staying short (16 characters)
+     */
+    private static final int TOKEN_ID_BYTES = 12;
     
-    @SuppressWarnings("unchecked")
-    public List<String> extractRoles(String token) {
-        return extractClaim(token, claims -> (List<String>) claims.get("roles"));
-    }
+    /**
+     * Random bytes in the "sid" claim
+     */
+    private static final int SESSION_ID_BYTES = 12;
     
-    public Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
-    }
+    private final JwtProperties jwtProperties;
+    private final JwtKeyring jwtKeyring;
     
-    public Date extractIssuedAt(String token) {
-        return extractClaim(token, Claims::getIssuedAt);
+    /**
+     * Parser built once; it is immutable and resolves verification keys through the keyring
+     */
+    private final JwtParser jwtParser;
+    
+    public JwtTokenProvider(JwtProperties jwtProperties, JwtKeyring jwtKeyring) {
+        this.jwtProperties = jwtProperties;
+        this.jwtKeyring = jwtKeyring;
+        this.jwtParser = Jwts.parser()
+                .keyLocator(jwtKeyring)
+                .build();
     }
     
     /**
-     * Extract the issued-at timestamp from a JWT token as LocalDateTime.
+     * Verify the signature of a JWT and parse its claims a single time.
+     * The returned value should be passed along instead of the raw token so that
+     * no caller has to verify or parse the same token again.
      *
      * @param token The JWT token
-     * @return The issued-at timestamp as LocalDateTime
+     * @return ParsedToken holding the verified claims
+     * @throws io.jsonwebtoken.JwtException if the token is expired, malformed or has an invalid signature
      */
-    public LocalDateTime extractIssuedAtAsLocalDateTime(String token) {
-        Date issuedAt = extractIssuedAt(token);
-        return LocalDateTime.ofInstant(issuedAt.toInstant(), ZoneId.systemDefault());
-    }
-    
-    public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
-        final Claims claims = extractAllClaims(token);
-        return claimsResolver.apply(claims);
+    public ParsedToken parseToken(String token) {
+        return ParsedToken.from(token, extractAllClaims(token));
     }
     
     private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(getSignKey())
-                .build()
+        return jwtParser
                 .parseSignedClaims(token)
                 .getPayload();
     }
     
-    private Boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
-    }
-    
     /**
-     * Validates a JWT token against user details and password change timestamp.
+     * Validates a parsed JWT token against user details and password change timestamp.
      * This method ensures that tokens issued before a password change are invalidated.
      *
-     * @param token The JWT token to validate
+     * @param parsedToken The already verified JWT token
      * @param userDetails The user details to validate against
      * @param passwordChangedAt The timestamp when the password was last changed
      * @return true if token is valid and was issued after the password change
      */
-    public Boolean validateToken(String token, UserDetails userDetails, LocalDateTime passwordChangedAt) {
-        final String username = extractUsername(token);
+    public Boolean validateToken(ParsedToken parsedToken, UserDetails userDetails, LocalDateTime passwordChangedAt) {
+        final String username = parsedToken.getSubject();
         
         // Basic validation
-        if (!username.equals(userDetails.getUsername()) || isTokenExpired(token)) {
+        if (!userDetails.getUsername().equals(username) || parsedToken.isExpired()) {
             return false;
         }
         
         // Check if token was issued before password change
         if (passwordChangedAt != null) {
-            LocalDateTime tokenIssuedAt = extractIssuedAtAsLocalDateTime(token);
+            LocalDateTime tokenIssuedAt = parsedToken.getIssuedAtAsLocalDateTime();
             // Token is invalid if it was issued before the password was changed
             if (tokenIssuedAt.isBefore(passwordChangedAt)) {
                 return false;
@@ -104,30 +92,42 @@ public class JwtTokenProvider {
         return true;
     }
     
-    public String generateToken(UserDetails userDetails) {
-        Map<String, Object> claims = buildClaims(userDetails);
+    /**
+     * Generate a new session id, identifying the token family of one login.
+     *
+     * @return Random session id for the "sid" claim
+     */
+    public static String newSessionId() {
+        return TokenHashing.randomId(SESSION_ID_BYTES);
+    }
+    
+    public String generateToken(UserDetails userDetails, String sessionId) {
+        Map<String, Object> claims = buildClaims(userDetails, sessionId);
         return createToken(claims, userDetails.getUsername(), jwtProperties.getExpiration());
     }
     
-    public String generateRefreshToken(UserDetails userDetails) {
-        Map<String, Object> claims = buildClaims(userDetails);
+    public String generateRefreshToken(UserDetails userDetails, String sessionId) {
+        Map<String, Object> claims = buildClaims(userDetails, sessionId);
         return createToken(claims, userDetails.getUsername(), jwtProperties.getRefreshExpiration());
     }
     
     /**
-     * Build claims map with userId and roles from UserDetails.
+     * Build claims map with userId, credential version, session id and roles from UserDetails.
      * This allows for authorization checks without database lookups.
      *
      * @param userDetails The user details containing userId and roles
+     * @param sessionId The session the token belongs to
      * @return Map of claims to be included in the JWT
      */
-    private Map<String, Object> buildClaims(UserDetails userDetails) {
+    private Map<String, Object> buildClaims(UserDetails userDetails, String sessionId) {
         Map<String, Object> claims = new HashMap<>();
+        claims.put("sid", sessionId);
         
         // Add userId if UserPrincipal (which has the id field)
         if (userDetails instanceof UserPrincipal) {
             UserPrincipal userPrincipal = (UserPrincipal) userDetails;
             claims.put("userId", userPrincipal.getId());
+            claims.put("cv", userPrincipal.getCredentialVersion());
         }
         
         // Add roles/authorities
@@ -141,16 +141,13 @@ public class JwtTokenProvider {
     
     private String createToken(Map<String, Object> claims, String subject, Long expiration) {
         return Jwts.builder()
+                .header().keyId(jwtKeyring.getActiveKeyId()).and()
+                .id(TokenHashing.randomId(TOKEN_ID_BYTES))
                 .claims(claims)
                 .subject(subject)
                 .issuedAt(new Date(System.currentTimeMillis()))
                 .expiration(new Date(System.currentTimeMillis() + expiration))
-                .signWith(getSignKey())
+                .signWith(jwtKeyring.getActiveSigningKey())
                 .compact();
     }
-    
-    private SecretKey getSignKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(jwtProperties.getSecret());
-        return Keys.hmacShaKeyFor(keyBytes);
-    }
 }
@@ -0,0 +1,89 @@
+package com.aloneinabyss.lovelace.security;
+
+import com.aloneinabyss.lovelace.config.RateLimitProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-process record of rate-limit buckets that Redis reported as empty.
+ * Once Redis says a bucket holds no token for the next N milliseconds, nothing can change that
+ * before N has passed, so every further request for the bucket is rejected locally without a
+ * Redis round trip. Requests from an abusive client therefore cost Redis one call per refill.
+ * <p>
+ * Entries are spread over independently locked stripes, each a small LRU map, which bounds
+ * memory under many distinct clients and keeps contention low.
+ */
+@Component
+public class LocalRateLimiter {
+    
+    private static final int STRIPES = 64;
+    
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    
+    public LocalRateLimiter(RateLimitProperties rateLimitProperties) {
+        int entriesPerStripe = Math.max(1, rateLimitProperties.getLocalMaxEntries() / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(entriesPerStripe);
+        }
+    }
+    
+    /**
+     * Get how long a bucket is known to stay empty.
+     *
+     * @param key The bucket key
+     * @param now Current time (epoch milliseconds)
+     * @return Milliseconds until the bucket holds a token, or 0 if it is not known to be empty
+     */
+    public long blockedFor(String key, long now) {
+        Stripe stripe = stripeOf(key);
+        synchronized (stripe) {
+            Long blockedUntil = stripe.get(key);
+            if (blockedUntil == null) {
+                return 0;
+            }
+            if (blockedUntil <= now) {
+                stripe.remove(key);
+                return 0;
+            }
+            return blockedUntil - now;
+        }
+    }
+    
+    /**
+     * Remember that a bucket stays empty until the given time.
+     *
+     * @param key The bucket key
+     * @param blockedUntil When the bucket holds a token again (epoch milliseconds)
+     */
+    public void block(String key, long blockedUntil) {
+        Stripe stripe = stripeOf(key);
+        synchronized (stripe) {
+            stripe.merge(key, blockedUntil, Math::max);
+        }
+    }
+    
+    private Stripe stripeOf(String key) {
+        int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+    
+    /**
+     * Access-ordered map evicting its least recently used entry beyond a fixed size
+     */
+    private static class Stripe extends LinkedHashMap<String, Long> {
+        
+        private final int maxEntries;
+        
+        Stripe(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > maxEntries;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.aloneinabyss.lovelace.security;
+
+import io.jsonwebtoken.Claims;
+import lombok.ToString;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Immutable view of a JWT whose signature has already been verified.
+ * Produced once per request by {@link JwtTokenProvider#parseToken(String)} so that
+ * callers never need to re-verify or re-parse the same token to read its claims.
+ */
+@Value
+public class ParsedToken {
+
+    /**
+     * Request attribute under which {@link JwtAuthenticationFilter} stores the parsed access token
+     */
+    public static final String REQUEST_ATTRIBUTE = "parsedAccessToken";
+
+    /**
+     * Digest bytes kept when deriving a revocation id for tokens without a "jti" claim
+     */
+    private static final int LEGACY_REVOCATION_ID_BYTES = 12;
+
+    /**
+     * The raw compact JWT string
+     */
+    @ToString.Exclude
+    String token;
+
+    String subject;
+
+    String userId;
+
+    List<String> roles;
+
+    Date issuedAt;
+
+    Date expiration;
+
+    /**
+     * Unique token id ("jti" claim); null for tokens issued before ids were added
+     */
+    String tokenId;
+
+    /**
+     * Credential version of the user when the token was issued (0 for tokens without the claim)
+     */
+    long credentialVersion;
+
+    /**
+     * Session id ("sid" claim) shared by the access and refresh tokens of one login and all
+     * tokens rotated from them; null for tokens issued before sessions were tracked
+     */
+    String sessionId;
+
+    /**
+     * Build a parsed token from verified claims.
+     *
+     * @param token The raw compact JWT string
+     * @param claims The verified claims of the token
+     * @return ParsedToken exposing the claims used by the application
+     */
+    @SuppressWarnings("unchecked")
+    public static ParsedToken from(String token, Claims claims) {
+        List<String> roles = (List<String>) claims.get("roles");
+        Object credentialVersion = claims.get("cv");
+
+        return new ParsedToken(
+                token,
+                claims.getSubject(),
+                claims.get("userId", String.class),
+                roles != null ? List.copyOf(roles) : Collections.emptyList(),
+                claims.getIssuedAt(),
+                claims.getExpiration(),
+                claims.getId(),
+                credentialVersion instanceof Number ? ((Number) credentialVersion).longValue() : 0L,
+                claims.get("sid", String.class)
+        );
+    }
+
+    /**
+     * Get the identifier used to revoke this token: the "jti" claim, or a truncated hash
+     * of the token for tokens issued without one.
+     *
+     * @return Short identifier of this token
+     */
+    public String getRevocationId() {
+        return tokenId != null ? tokenId : legacyRevocationId(token);
+    }
+
+    /**
+     * Derive the revocation id of a token issued without a "jti" claim.
+     *
+     * @param token The raw compact JWT string
+     * @return Truncated hash of the token
+     */
+    public static String legacyRevocationId(String token) {
+        return TokenHashing.truncatedSha256(token, LEGACY_REVOCATION_ID_BYTES);
+    }
+
+    /**
+     * Check whether the token expiration is in the past.
+     *
+     * @return true if the token has expired
+     */
+    public boolean isExpired() {
+        return expiration.before(new Date());
+    }
+
+    /**
+     * Get the issued-at timestamp as LocalDateTime.
+     *
+     * @return The issued-at timestamp as LocalDateTime
+     */
+    public LocalDateTime getIssuedAtAsLocalDateTime() {
+        return LocalDateTime.ofInstant(issuedAt.toInstant(), ZoneId.systemDefault());
+    }
+
+    /**
+     * Get the remaining lifetime of the token.
+     *
+     * @return Milliseconds until the token expires (negative if already expired)
+     */
+    public long getTimeToLiveMillis() {
+        return expiration.getTime() - System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,69 @@
+package com.aloneinabyss.lovelace.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.Arrays;
+
+/**
+ * Picks the BCrypt strength (log2 of the number of rounds) whose hashing time on the current
+ * machine is closest to a target without exceeding it.
+ * Every additional strength step doubles the cost, so a single measurement at the lowest
+ * allowed strength is enough to estimate the others; the chosen strength is then measured
+ * once more and lowered if the estimate was too optimistic.
+ */
+@Slf4j
+public class PasswordHashCalibrator {
+    
+    private static final String SAMPLE_PASSWORD = "calibration-sample-password";
+    private static final int SAMPLES = 3;
+    
+    private PasswordHashCalibrator() {
+        // Utility class - prevent instantiation
+    }
+    
+    /**
+     * Calibrate the BCrypt strength for a target hashing time.
+     *
+     * @param targetMillis Desired time for a single hash in milliseconds
+     * @param minStrength Lowest acceptable strength, used even if it exceeds the target
+     * @param maxStrength Highest strength to consider
+     * @return The calibrated strength
+     */
+    public static int calibrateBCryptStrength(long targetMillis, int minStrength, int maxStrength) {
+        // Warm up the JIT so the first measurement is not inflated
+        new BCryptPasswordEncoder(minStrength).encode(SAMPLE_PASSWORD);
+        
+        double baseMillis = measure(minStrength);
+        int strength = minStrength;
+        
+        while (strength < maxStrength && baseMillis * (1L << (strength + 1 - minStrength)) <= targetMillis) {
+            strength++;
+        }
+        
+        while (strength > minStrength && measure(strength) > targetMillis * 1.5) {
+            strength--;
+        }
+        
+        log.info("Calibrated BCrypt strength {} for a target of {}ms ({}ms at strength {})",
+                strength, targetMillis, Math.round(baseMillis), minStrength);
+        return strength;
+    }
+    
+    /**
+     * Median time of a few hashes at the given strength, in milliseconds.
+     */
+    private static double measure(int strength) {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(strength);
+        double[] samples = new double[SAMPLES];
+        
+        for (int i = 0; i < SAMPLES; i++) {
+            long start = System.nanoTime();
+            encoder.encode(SAMPLE_PASSWORD);
+            samples[i] = (System.nanoTime() - start) / 1_000_000.0;
+        }
+        
+        Arrays.sort(samples);
+        return samples[SAMPLES / 2];
+    }
+}
@@ -0,0 +1,246 @@
+package com.aloneinabyss.lovelace.security;
+
+import com.aloneinabyss.lovelace.config.RateLimitProperties;
+import com.aloneinabyss.lovelace.security.service.RateLimitService;
+import com.aloneinabyss.lovelace.shared.exception.ErrorCode;
+import com.aloneinabyss.lovelace.shared.exception.ErrorResponse;
+import com.aloneinabyss.lovelace.shared.service.MessageService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Rate limits the routes configured under {@code rate-limit.routes}, such as login and
+ * registration, before any password hashing, database or SMTP work is done.
+ * Requests are limited per client IP and, for routes naming an identity field, per account
+ * taken from the JSON body. Responses carry RateLimit-Limit, RateLimit-Remaining and
+ * RateLimit-Reset headers; rejected requests get 429 Too Many Requests with Retry-After.
+ * <p>
+ * The per-account limit must not be avoidable: bodies too large to inspect are rejected with
+ * 413 Payload Too Large, and requests whose body names no account share one identity bucket
+ * per route. The client IP is the request's remote address, which the server resolves from
+ * X-Forwarded-For behind trusted proxies ({@code server.forward-headers-strategy}).
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RateLimitFilter extends OncePerRequestFilter {
+    
+    /**
+     * Bytes of the request body inspected for the identity field; larger bodies are rejected
+     */
+    private static final int MAX_INSPECTED_BODY_BYTES = 8 * 1024;
+    
+    /**
+     * Resolves the decoded path within the application, as the controllers are matched against;
+     * the raw URI would let e.g. "/api/auth/%6Cogin" reach the login route unlimited
+     */
+    private static final UrlPathHelper URL_PATH_HELPER = new UrlPathHelper();
+    
+    private final RateLimitProperties rateLimitProperties;
+    private final RateLimitService rateLimitService;
+    private final ObjectMapper objectMapper;
+    private final MessageService messageService;
+    
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        return !rateLimitProperties.isEnabled()
+                || !"POST".equals(request.getMethod())
+                || findRoute(request) == null;
+    }
+    
+    @Override
+    protected void doFilterInternal(
+            @NonNull HttpServletRequest request,
+            @NonNull HttpServletResponse response,
+            @NonNull FilterChain filterChain
+    ) throws ServletException, IOException {
+        Map.Entry<String, RateLimitProperties.Route> route = findRoute(request);
+        HttpServletRequest forwardedRequest = request;
+        String identity = null;
+        
+        if (route.getValue().getIdentityField() != null && !route.getValue().getIdentityField().isBlank()) {
+            if (request.getContentLengthLong() > MAX_INSPECTED_BODY_BYTES) {
+                reject(request, response, HttpStatus.PAYLOAD_TOO_LARGE, ErrorCode.PAYLOAD_TOO_LARGE);
+                return;
+            }
+            
+            // Read the body once and replay it to the controller
+            byte[] body = request.getInputStream().readNBytes(MAX_INSPECTED_BODY_BYTES + 1);
+            if (body.length > MAX_INSPECTED_BODY_BYTES) {
+                reject(request, response, HttpStatus.PAYLOAD_TOO_LARGE, ErrorCode.PAYLOAD_TOO_LARGE);
+                return;
+            }
+            forwardedRequest = new ReplayingRequest(request, body);
+            identity = readIdentity(body, route.getValue().getIdentityField());
+        }
+        
+        Optional<RateLimitService.Decision> decision = rateLimitService.check(
+                route.getKey(), route.getValue(), request.getRemoteAddr(), identity);
+        
+        if (decision.isPresent()) {
+            RateLimitService.Decision rateLimit = decision.get();
+            response.setHeader("RateLimit-Limit", String.valueOf(rateLimit.getLimit()));
+            response.setHeader("RateLimit-Remaining", String.valueOf(rateLimit.getRemaining()));
+            response.setHeader("RateLimit-Reset", String.valueOf(rateLimit.getResetSeconds()));
+            
+            if (!rateLimit.isAllowed()) {
+                log.warn("Rate limit exceeded on {} from {}", route.getKey(), request.getRemoteAddr());
+                response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(rateLimit.getRetryAfterSeconds()));
+                reject(request, response, HttpStatus.TOO_MANY_REQUESTS, ErrorCode.TOO_MANY_REQUESTS);
+                return;
+            }
+        }
+        
+        filterChain.doFilter(forwardedRequest, response);
+    }
+    
+    private Map.Entry<String, RateLimitProperties.Route> findRoute(HttpServletRequest request) {
+        String path = URL_PATH_HELPER.getPathWithinApplication(request);
+        
+        for (Map.Entry<String, RateLimitProperties.Route> route : rateLimitProperties.getRoutes().entrySet()) {
+            if (path.equals(route.getValue().getPath())) {
+                return route;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Read the account a request targets from its JSON body.
+     *
+     * @return The identity, or "" if the body is malformed or names none, so that such requests
+     * are limited together rather than by IP only
+     */
+    String readIdentity(byte[] body, String field) {
+        try {
+            JsonNode value = objectMapper.readTree(body).path(field);
+            return value.isTextual() && !value.asText().isBlank() ? value.asText() : "";
+        } catch (IOException e) {
+            return "";
+        }
+    }
+    
+    private void reject(HttpServletRequest request, HttpServletResponse response, HttpStatus status, ErrorCode errorCode)
+            throws IOException {
+        ErrorResponse errorResponse = ErrorResponse.builder()
+                .timestamp(LocalDateTime.now())
+                .status(status.value())
+                .error(status.getReasonPhrase())
+                .errorCode(errorCode.name())
+                .message(messageService.getMessage(errorCode.getMessageKey()))
+                .path(request.getRequestURI())
+                .build();
+        
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write(objectMapper.writeValueAsString(errorResponse));
+    }
+    
+    /**
+     * Request whose body was read completely by this filter and is served again from memory
+     */
+    static class ReplayingRequest extends HttpServletRequestWrapper {
+        
+        private final byte[] body;
+        
+        private ServletInputStream inputStream;
+        
+        ReplayingRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+        
+        @Override
+        public ServletInputStream getInputStream() {
+            if (inputStream != null) {
+                return inputStream;
+            }
+            
+            ByteArrayInputStream buffer = new ByteArrayInputStream(body);
+            inputStream = new ServletInputStream() {
+                
+                @Override
+                public int read() {
+                    return buffer.read();
+                }
+                
+                @Override
+                public int read(byte[] bytes, int offset, int length) {
+                    return buffer.read(bytes, offset, length);
+                }
+                
+                @Override
+                public boolean isFinished() {
+                    return buffer.available() == 0;
+                }
+                
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+                
+                /**
+                 * The whole body is in memory, so the listener is told right away that data is
+                 * available and, once it has read everything, that the body is complete.
+                 */
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    try {
+                        if (!isFinished()) {
+                            readListener.onDataAvailable();
+                        }
+                        if (isFinished()) {
+                            readListener.onAllDataRead();
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        readListener.onError(e);
+                    }
+                }
+            };
+            return inputStream;
+        }
+        
+        @Override
+        public int getContentLength() {
+            return body.length;
+        }
+        
+        @Override
+        public long getContentLengthLong() {
+            return body.length;
+        }
+        
+        @Override
+        public BufferedReader getReader() throws IOException {
+            String encoding = getCharacterEncoding();
+            Charset charset = encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+            return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+        }
+    }
+}
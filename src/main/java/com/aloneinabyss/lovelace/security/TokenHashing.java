@@ -0,0 +1,69 @@
+package com.aloneinabyss.lovelace.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Hashing and random identifier helpers for tokens.
+ * Used wherever a token must be referenced (cache keys, Redis keys) without storing the token itself.
+ */
+public class TokenHashing {
+    
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+    private static final Base64.Encoder BASE64_URL = Base64.getUrlEncoder().withoutPadding();
+    
+    private TokenHashing() {
+        // Utility class - prevent instantiation
+    }
+    
+    /**
+     * Compute the SHA-256 digest of a token.
+     *
+     * @param token The token
+     * @return The 32-byte digest
+     */
+    public static byte[] sha256(String token) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    /**
+     * Compute the base64url-encoded SHA-256 digest of a token.
+     *
+     * @param token The token
+     * @return The 43-character digest
+     */
+    public static String sha256Base64Url(String token) {
+        return BASE64_URL.encodeToString(sha256(token));
+    }
+    
+    /**
+     * Compute a short base64url-encoded identifier from the first bytes of the SHA-256 digest.
+     *
+     * @param token The token
+     * @param bytes Number of digest bytes to keep
+     * @return The truncated digest
+     */
+    public static String truncatedSha256(String token, int bytes) {
+        return BASE64_URL.encodeToString(Arrays.copyOf(sha256(token), bytes));
+    }
+    
+    /**
+     * Generate a random base64url-encoded identifier.
+     *
+     * @param bytes Number of random bytes
+     * @return The random identifier
+     */
+    public static String randomId(int bytes) {
+        byte[] random = new byte[bytes];
+        SECURE_RANDOM.nextBytes(random);
+        return BASE64_URL.encodeToString(random);
+    }
+}
@@ -8,6 +8,7 @@ import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
 import com.aloneinabyss.lovelace.auth.model.User;
+import com.aloneinabyss.lovelace.auth.repository.UserAuthView;
 
 import java.time.LocalDateTime;
 import java.util.Collection;
@@ -25,6 +26,7 @@ public class UserPrincipal implements UserDetails {
     private Collection<? extends GrantedAuthority> authorities;
     private boolean enabled;
     private LocalDateTime passwordChangedAt;
+    private long credentialVersion;
     
     public static UserPrincipal build(User user) {
         Collection<GrantedAuthority> authorities = user.getRoles().stream()
@@ -38,7 +40,56 @@ public class UserPrincipal implements UserDetails {
                 user.getPassword(),
                 authorities,
                 user.isEnabled(),
-                user.getPasswordChangedAt()
+                user.getPasswordChangedAt(),
+                user.getCredentialVersion()
+        );
+    }
+    
+    /**
+     * Build a principal from the authentication projection of a user.
+     * The password is not part of the projection and is left empty.
+     *
+     * @param user The projected user
+     * @return UserPrincipal for request authentication
+     */
+    public static UserPrincipal build(UserAuthView user) {
+        Collection<GrantedAuthority> authorities = user.getRoles().stream()
+                .map(SimpleGrantedAuthority::new)
+                .collect(Collectors.toList());
+        
+        return new UserPrincipal(
+                user.getId(),
+                user.getUsername(),
+                user.getEmail(),
+                null,
+                authorities,
+                user.isEnabled(),
+                user.getPasswordChangedAt(),
+                user.getCredentialVersion()
+        );
+    }
+    
+    /**
+     * Build a slim principal from the claims of a verified access token, without a database lookup.
+     * Email, password and passwordChangedAt are not part of the token and are left empty.
+     *
+     * @param parsedToken The verified access token
+     * @return UserPrincipal holding the id, username, roles and credential version from the token
+     */
+    public static UserPrincipal fromToken(ParsedToken parsedToken) {
+        Collection<GrantedAuthority> authorities = parsedToken.getRoles().stream()
+                .map(SimpleGrantedAuthority::new)
+                .collect(Collectors.toList());
+        
+        return new UserPrincipal(
+                parsedToken.getUserId(),
+                parsedToken.getSubject(),
+                null,
+                null,
+                authorities,
+                true,
+                null,
+                parsedToken.getCredentialVersion()
         );
     }
     
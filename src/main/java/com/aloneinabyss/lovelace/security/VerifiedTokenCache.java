@@ -0,0 +1,117 @@
+package com.aloneinabyss.lovelace.security;
+
+import com.aloneinabyss.lovelace.config.JwtProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded in-process cache of access tokens that already passed verification.
+ * Entries are keyed by a SHA-256 digest of the token and never outlive the token's
+ * expiration, so a hit lets {@link JwtAuthenticationFilter} skip signature verification,
+ * claims parsing and the user lookup entirely.
+ * <p>
+ * Entries are invalidated when a token is blacklisted or the user's password changes.
+ * Hit, miss and eviction counts are exposed through Actuator as "cache.*" metrics
+ * tagged with cache=jwt.verified-tokens.
+ */
+@Slf4j
+@Component
+public class VerifiedTokenCache {
+    
+    private static final String CACHE_NAME = "jwt.verified-tokens";
+    
+    private final boolean enabled;
+    private final Cache<String, Entry> cache;
+    
+    public VerifiedTokenCache(JwtProperties jwtProperties, MeterRegistry meterRegistry) {
+        JwtProperties.TokenCache config = jwtProperties.getTokenCache();
+        long maxTtlNanos = TimeUnit.MILLISECONDS.toNanos(config.getMaxTtl());
+        
+        this.enabled = config.isEnabled();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(config.getMaximumSize())
+                .expireAfter(new Expiry<String, Entry>() {
+                    @Override
+                    public long expireAfterCreate(String key, Entry entry, long currentTime) {
+                        long untilExpiration = TimeUnit.MILLISECONDS.toNanos(
+                                entry.getParsedToken().getTimeToLiveMillis());
+                        return Math.max(0, Math.min(untilExpiration, maxTtlNanos));
+                    }
+                    
+                    @Override
+                    public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                    
+                    @Override
+                    public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        
+        log.info("Verified token cache {} (maximumSize={}, maxTtl={}ms)",
+                enabled ? "enabled" : "disabled", config.getMaximumSize(), config.getMaxTtl());
+    }
+    
+    /**
+     * Look up a previously verified token.
+     *
+     * @param token The raw JWT token
+     * @return The cached entry, or null if the token is not cached or has expired
+     */
+    public Entry get(String token) {
+        if (!enabled) {
+            return null;
+        }
+        return cache.getIfPresent(TokenHashing.sha256Base64Url(token));
+    }
+    
+    /**
+     * Cache a token that passed signature verification and user validation.
+     *
+     * @param parsedToken The verified token
+     * @param userPrincipal The principal the token authenticated
+     */
+    public void put(ParsedToken parsedToken, UserPrincipal userPrincipal) {
+        if (!enabled) {
+            return;
+        }
+        cache.put(TokenHashing.sha256Base64Url(parsedToken.getToken()), new Entry(parsedToken, userPrincipal));
+    }
+    
+    /**
+     * Remove a single token, e.g. after it has been blacklisted.
+     *
+     * @param token The raw JWT token
+     */
+    public void invalidate(String token) {
+        cache.invalidate(TokenHashing.sha256Base64Url(token));
+    }
+    
+    /**
+     * Remove every cached token of a user, e.g. after a password change.
+     *
+     * @param username The username whose tokens should be removed
+     */
+    public void invalidateUser(String username) {
+        cache.asMap().values().removeIf(entry -> username.equals(entry.getUserPrincipal().getUsername()));
+    }
+    
+    @Value
+    public static class Entry {
+        ParsedToken parsedToken;
+        UserPrincipal userPrincipal;
+    }
+}
@@ -0,0 +1,65 @@
+package com.aloneinabyss.lovelace.security.controller;
+
+import com.aloneinabyss.lovelace.config.JwtProperties;
+import com.aloneinabyss.lovelace.security.JwtKeyring;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * Publishes the public signing keys as a JSON Web Key Set (RFC 7517).
+ * Resource servers use it to verify access tokens locally instead of calling this API.
+ * The document only changes on restart, so it is serialized once and served with a
+ * strong ETag and Cache-Control headers.
+ */
+@Slf4j
+@RestController
+public class JwksController {
+    
+    private final byte[] jwksDocument;
+    private final String etag;
+    private final CacheControl cacheControl;
+    
+    public JwksController(JwtKeyring jwtKeyring, JwtProperties jwtProperties, ObjectMapper objectMapper)
+            throws JsonProcessingException, NoSuchAlgorithmException {
+        this.jwksDocument = objectMapper.writeValueAsBytes(Map.of("keys", jwtKeyring.getPublicJwks()));
+        
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(jwksDocument);
+        this.etag = "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest) + "\"";
+        
+        this.cacheControl = CacheControl.maxAge(Duration.ofSeconds(jwtProperties.getJwksMaxAge())).cachePublic();
+        
+        log.info("JWKS document prepared with {} public key(s)", jwtKeyring.getPublicJwks().size());
+    }
+    
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<byte[]> getJwks(
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch
+    ) {
+        if (etag.equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .cacheControl(cacheControl)
+                    .build();
+        }
+        
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(etag)
+                .cacheControl(cacheControl)
+                .body(jwksDocument);
+    }
+}
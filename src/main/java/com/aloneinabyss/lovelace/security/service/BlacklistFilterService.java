@@ -0,0 +1,267 @@
+package com.aloneinabyss.lovelace.security.service;
+
+import com.aloneinabyss.lovelace.config.JwtProperties;
+import com.aloneinabyss.lovelace.security.BloomFilter;
+import com.aloneinabyss.lovelace.security.ParsedToken;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Local negative cache for blacklist checks.
+ * Every instance keeps a Bloom filter of blacklisted token ids and revoked sessions, so the common case of a token
+ * that was never blacklisted is answered in memory; Redis is only consulted on a possible hit.
+ * <p>
+ * The filter is seeded from Redis at startup, updated over Redis pub/sub whenever a token is
+ * blacklisted, and periodically rebuilt from Redis to drop expired ids and to recover from
+ * messages missed while disconnected. Until the first build succeeds every check goes to Redis.
+ */
+@Slf4j
+@Service
+public class BlacklistFilterService implements MessageListener {
+    
+    private static final String CHANNEL = "blacklist:jti:added";
+    private static final String METRIC_PREFIX = "jwt.blacklist.filter";
+    
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final JwtProperties.BlacklistFilter config;
+    
+    private final Counter negatives;
+    private final Counter confirmedHits;
+    private final Counter falsePositives;
+    private final Timer syncLag;
+    
+    /**
+     * The filter used for checks; null until the first build from Redis succeeds
+     */
+    private volatile BloomFilter filter;
+    
+    /**
+     * The filter being built while a rebuild is in progress; receives every id added meanwhile
+     */
+    private volatile BloomFilter rebuilding;
+    
+    public BlacklistFilterService(RedisTemplate<String, String> redisTemplate,
+                                  RedisMessageListenerContainer listenerContainer,
+                                  JwtProperties jwtProperties,
+                                  MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.config = jwtProperties.getBlacklistFilter();
+        
+        this.negatives = lookupCounter(meterRegistry, "negative");
+        this.confirmedHits = lookupCounter(meterRegistry, "confirmed");
+        this.falsePositives = lookupCounter(meterRegistry, "false_positive");
+        this.syncLag = Timer.builder(METRIC_PREFIX + ".sync.lag")
+                .description("Delay between a token being blacklisted and this instance's filter receiving it")
+                .register(meterRegistry);
+        
+        Gauge.builder(METRIC_PREFIX + ".bits", this, service -> service.filter != null ? service.filter.getBitSize() : 0)
+                .description("Size of the blacklist filter in bits")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".entries", this, service -> service.filter != null ? service.filter.getInsertions() : 0)
+                .description("Token ids added to the blacklist filter")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".expected.false.positive.rate", this,
+                        service -> service.filter != null ? service.filter.getExpectedFalsePositiveProbability() : 0)
+                .description("False-positive probability predicted from the filter's size and fill")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".false.positive.rate", this, BlacklistFilterService::observedFalsePositiveRate)
+                .description("Share of non-blacklisted tokens the filter sent to Redis")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Subscribe to blacklist additions and build the filter from Redis.
+     * A failed build is not fatal: checks fall back to Redis until the next scheduled rebuild.
+     */
+    @PostConstruct
+    public void initialize() {
+        if (!config.isEnabled()) {
+            log.info("Blacklist filter disabled, every blacklist check goes to Redis");
+            return;
+        }
+        
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+        rebuild();
+    }
+    
+    /**
+     * Check whether a token may be blacklisted.
+     *
+     * @param parsedToken The verified token
+     * @return false if the token is definitely not blacklisted, true if Redis must be consulted
+     */
+    public boolean mightBeBlacklisted(ParsedToken parsedToken) {
+        BloomFilter current = filter;
+        
+        if (current == null) {
+            return true;
+        }
+        
+        if (!current.mightContain(parsedToken.getRevocationId())
+                && (parsedToken.getSessionId() == null || !current.mightContain(familyEntry(parsedToken.getSessionId())))) {
+            negatives.increment();
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Record the Redis answer for a token the filter reported as possibly blacklisted.
+     *
+     * @param blacklisted Whether Redis confirmed the token as blacklisted
+     */
+    public void recordLookup(boolean blacklisted) {
+        if (filter != null) {
+            (blacklisted ? confirmedHits : falsePositives).increment();
+        }
+    }
+    
+    /**
+     * Add a newly blacklisted token id locally and broadcast it to every instance.
+     * Must be called after the id has been written to Redis, so that a concurrent rebuild
+     * either sees it in Redis or receives it directly.
+     *
+     * @param revocationId The blacklisted token id
+     */
+    public void publish(String revocationId) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        
+        add(revocationId);
+        redisTemplate.convertAndSend(CHANNEL, revocationId + ":" + System.currentTimeMillis());
+    }
+    
+    /**
+     * Get the filter entry standing for a revoked session, distinct from any token id.
+     *
+     * @param sessionId The revoked session id
+     * @return Entry to publish and check for the session
+     */
+    public static String familyEntry(String sessionId) {
+        return "family:" + sessionId;
+    }
+    
+    /**
+     * Replace the filter with one built from the current contents of the blacklist.
+     */
+    @Scheduled(initialDelayString = "${jwt.blacklist-filter.rebuild-interval:300000}",
+            fixedDelayString = "${jwt.blacklist-filter.rebuild-interval:300000}")
+    public void rebuild() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        
+        // Size for the expected load, or twice the current content if the blacklist has outgrown it
+        BloomFilter current = filter;
+        long capacity = Math.max(config.getExpectedInsertions(), current != null ? current.getInsertions() * 2 : 0);
+        BloomFilter next = new BloomFilter(capacity, config.getFalsePositiveProbability());
+        
+        try {
+            // Ids published while loading are added to both filters, see add()
+            rebuilding = next;
+            List<String> ids = loadBlacklistedIds();
+            ids.forEach(next::put);
+            
+            filter = next;
+            rebuilding = null;
+            log.info("Blacklist filter rebuilt with {} token ids ({} bits)", ids.size(), next.getBitSize());
+        } catch (Exception e) {
+            rebuilding = null;
+            log.warn("Failed to rebuild blacklist filter: {}", e.getMessage());
+        }
+    }
+    
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.lastIndexOf(':');
+        
+        try {
+            long publishedAt = Long.parseLong(body.substring(separator + 1));
+            add(body.substring(0, separator));
+            syncLag.record(Duration.ofMillis(Math.max(0, System.currentTimeMillis() - publishedAt)));
+        } catch (RuntimeException e) {
+            log.warn("Ignoring malformed blacklist filter message: {}", body);
+        }
+    }
+    
+    private void add(String revocationId) {
+        // Read the rebuilding filter first: if it is already gone, the swap has completed and
+        // the current filter is the rebuilt one
+        BloomFilter next = rebuilding;
+        if (next != null) {
+            next.put(revocationId);
+        }
+        
+        BloomFilter current = filter;
+        if (current != null) {
+            current.put(revocationId);
+        }
+    }
+    
+    private List<String> loadBlacklistedIds() {
+        List<String> ids = new ArrayList<>();
+        
+        for (String key : scanKeys(TokenBlacklistService.BUCKET_PREFIX)) {
+            Set<String> members = redisTemplate.opsForSet().members(key);
+            if (members != null) {
+                ids.addAll(members);
+            }
+        }
+        
+        for (String key : scanKeys(TokenBlacklistService.FAMILY_PREFIX)) {
+            ids.add(familyEntry(key.substring(TokenBlacklistService.FAMILY_PREFIX.length())));
+        }
+        
+        for (String key : scanKeys(TokenBlacklistService.LEGACY_BLACKLIST_PREFIX)) {
+            ids.add(ParsedToken.legacyRevocationId(key.substring(TokenBlacklistService.LEGACY_BLACKLIST_PREFIX.length())));
+        }
+        
+        return ids;
+    }
+    
+    private List<String> scanKeys(String prefix) {
+        List<String> keys = new ArrayList<>();
+        
+        try (Cursor<String> cursor = redisTemplate.scan(ScanOptions.scanOptions().match(prefix + "*").count(1000).build())) {
+            cursor.forEachRemaining(keys::add);
+        }
+        
+        return keys;
+    }
+    
+    private double observedFalsePositiveRate() {
+        double falsePositiveCount = falsePositives.count();
+        double total = falsePositiveCount + negatives.count();
+        return total > 0 ? falsePositiveCount / total : 0;
+    }
+    
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder(METRIC_PREFIX + ".lookups")
+                .description("Blacklist checks by filter outcome")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,148 @@
+package com.aloneinabyss.lovelace.security.service;
+
+import com.aloneinabyss.lovelace.config.JwtProperties;
+import com.aloneinabyss.lovelace.security.ParsedToken;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Replicated map of per-user credential versions.
+ * Versions are stored in Redis and mirrored in memory on every instance; changes are
+ * broadcast over Redis pub/sub. Only users whose credentials changed have an entry, so the map
+ * stays small and checking a token is a single in-memory lookup.
+ * <p>
+ * Once the longest token lifetime has passed after a change, every token carrying an older
+ * version has expired, so the entry is no longer needed: the Redis key expires after that
+ * lifetime and local entries are pruned on the same schedule.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CredentialVersionService implements MessageListener {
+    
+    private static final String VERSION_PREFIX = "auth:credential-version:";
+    private static final String CHANNEL = "auth:credential-versions:changed";
+    
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final JwtProperties jwtProperties;
+    
+    private final Map<String, Version> versions = new ConcurrentHashMap<>();
+    
+    /**
+     * Credential version of a user and when it stops mattering
+     */
+    @Value
+    private static class Version {
+        long value;
+        
+        /**
+         * When every token issued with an older version has expired (epoch milliseconds)
+         */
+        long expiresAt;
+    }
+    
+    /**
+     * Subscribe to version changes and seed the local map from Redis.
+     * In claims mode the map is the only revocation check, so startup fails if it cannot be loaded.
+     */
+    @PostConstruct
+    public void initialize() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+        
+        try {
+            List<String> keys = new ArrayList<>();
+            try (Cursor<String> cursor = redisTemplate.scan(
+                    ScanOptions.scanOptions().match(VERSION_PREFIX + "*").count(1000).build())) {
+                cursor.forEachRemaining(keys::add);
+            }
+            
+            List<String> stored = keys.isEmpty() ? List.of() : redisTemplate.opsForValue().multiGet(keys);
+            for (int i = 0; i < keys.size(); i++) {
+                // Keys that expired between the scan and the read come back as null
+                if (stored != null && stored.get(i) != null) {
+                    updateLocal(keys.get(i).substring(VERSION_PREFIX.length()), Long.parseLong(stored.get(i)));
+                }
+            }
+            log.info("Loaded {} credential versions from Redis", versions.size());
+        } catch (Exception e) {
+            if (jwtProperties.getAuthenticationMode() == JwtProperties.AuthenticationMode.CLAIMS) {
+                throw new IllegalStateException("Failed to load credential versions from Redis", e);
+            }
+            log.warn("Failed to load credential versions from Redis: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Check whether a token was issued for the user's current credentials.
+     *
+     * @param parsedToken The verified token
+     * @return true if the token's credential version is not older than the user's current version
+     */
+    public boolean isCurrent(ParsedToken parsedToken) {
+        if (parsedToken.getUserId() == null) {
+            return true;
+        }
+        
+        Version version = versions.get(parsedToken.getUserId());
+        return version == null || parsedToken.getCredentialVersion() >= version.getValue();
+    }
+    
+    /**
+     * Record a new credential version for a user and broadcast it to every instance.
+     *
+     * @param userId The user id
+     * @param version The user's new credential version
+     */
+    public void publish(String userId, long version) {
+        updateLocal(userId, version);
+        redisTemplate.opsForValue().set(VERSION_PREFIX + userId, String.valueOf(version),
+                Duration.ofMillis(jwtProperties.getMaxTokenLifetime()));
+        redisTemplate.convertAndSend(CHANNEL, userId + ":" + version);
+        log.debug("Published credential version {} for user: {}", version, userId);
+    }
+    
+    /**
+     * Drop versions older than the longest token lifetime; no token they could reject is still valid.
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void prune() {
+        long now = System.currentTimeMillis();
+        versions.values().removeIf(version -> version.getExpiresAt() <= now);
+    }
+    
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.lastIndexOf(':');
+        
+        try {
+            updateLocal(body.substring(0, separator), Long.parseLong(body.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            log.warn("Ignoring malformed credential version message: {}", body);
+        }
+    }
+    
+    private void updateLocal(String userId, long version) {
+        Version next = new Version(version, System.currentTimeMillis() + jwtProperties.getMaxTokenLifetime());
+        versions.merge(userId, next, (current, updated) -> updated.getValue() >= current.getValue() ? updated : current);
+    }
+}
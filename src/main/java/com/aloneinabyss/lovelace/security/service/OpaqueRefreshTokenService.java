@@ -0,0 +1,206 @@
+package com.aloneinabyss.lovelace.security.service;
+
+import com.aloneinabyss.lovelace.config.JwtProperties;
+import com.aloneinabyss.lovelace.security.ParsedToken;
+import com.aloneinabyss.lovelace.security.TokenHashing;
+import com.aloneinabyss.lovelace.security.UserPrincipal;
+import com.aloneinabyss.lovelace.shared.exception.AuthenticationException;
+import com.aloneinabyss.lovelace.shared.exception.ErrorCode;
+import com.aloneinabyss.lovelace.shared.exception.InternalServerException;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Service for opaque refresh tokens, used when {@code jwt.refresh-token-format} is OPAQUE.
+ * An opaque refresh token is 32 random bytes; Redis holds the session metadata as a hash
+ * keyed by the token's SHA-256 digest, so the token itself is never stored in the clear. The
+ * one place a token is kept is the grace window entry of a rotation, which holds the new token
+ * encrypted under a key derived from the rotated one (see {@link TokenBlacklistService}).
+ * <p>
+ * Refreshing needs no signature verification: one script looks the token up, checks its
+ * session, and rotates it into a new token. The used token stays behind as a tombstone until
+ * it would have expired, so that reuse is detected the same way as for JWT refresh tokens.
+ * Revoking a token is a key delete.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OpaqueRefreshTokenService {
+    
+    private final RedisTemplate<String, String> redisTemplate;
+    private final JwtProperties jwtProperties;
+    
+    static final String KEY_PREFIX = "refresh:opaque:";
+    
+    private static final int TOKEN_BYTES = 32;
+    
+    private static final RedisScript<Long> ISSUE_SCRIPT =
+            RedisScript.of(new ClassPathResource("redis/opaque_refresh_issue.lua"), Long.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> ROTATE_SCRIPT =
+            RedisScript.of(new ClassPathResource("redis/opaque_refresh_rotate.lua"), List.class);
+    
+    /**
+     * Result of {@link #rotate(String)}
+     */
+    @Value
+    public static class Rotation {
+        /**
+         * Outcome of the single-use check, as for JWT refresh tokens
+         */
+        TokenBlacklistService.RevocationResult result;
+        
+        /**
+         * The presented token with its stored session metadata
+         */
+        ParsedToken presentedToken;
+        
+        /**
+         * The token it was rotated into; null unless the result is REVOKED
+         */
+        String newToken;
+    }
+    
+    /**
+     * Whether new refresh tokens are issued as opaque tokens.
+     *
+     * @return true if the refresh token format is OPAQUE
+     */
+    public boolean isEnabled() {
+        return jwtProperties.getRefreshTokenFormat() == JwtProperties.RefreshTokenFormat.OPAQUE;
+    }
+    
+    /**
+     * Tell an opaque refresh token apart from a JWT, which always contains dots.
+     *
+     * @param token The refresh token as presented by the client
+     * @return true if the token is opaque
+     */
+    public static boolean isOpaque(String token) {
+        return token.indexOf('.') < 0;
+    }
+    
+    /**
+     * Issue an opaque refresh token for a new session.
+     *
+     * @param userPrincipal The authenticated user
+     * @param sessionId The session the token belongs to
+     * @return The opaque refresh token
+     */
+    public String issue(UserPrincipal userPrincipal, String sessionId) {
+        String token = TokenHashing.randomId(TOKEN_BYTES);
+        long now = System.currentTimeMillis();
+        long expiresAt = now + jwtProperties.getRefreshExpiration();
+        String roles = userPrincipal.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .collect(Collectors.joining(","));
+        
+        try {
+            redisTemplate.execute(ISSUE_SCRIPT, List.of(keyOf(token)),
+                    String.valueOf(expiresAt),
+                    "userId", userPrincipal.getId(),
+                    "username", userPrincipal.getUsername(),
+                    "roles", roles,
+                    "sid", sessionId,
+                    "cv", String.valueOf(userPrincipal.getCredentialVersion()),
+                    "iat", String.valueOf(now),
+                    "exp", String.valueOf(expiresAt));
+        } catch (Exception e) {
+            log.error("Failed to store refresh token: {}", e.getMessage(), e);
+            throw new InternalServerException(ErrorCode.INTERNAL_ERROR, "error.internal", e);
+        }
+        
+        return token;
+    }
+    
+    /**
+     * Look up an opaque refresh token and, if it is unused and its session is not revoked,
+     * rotate it into a new token with the same session metadata, in one atomic round trip.
+     * Reusing a rotated token outside the grace window revokes its session.
+     * <p>
+     * The user is not validated here; if the caller rejects the refresh afterwards it should
+     * {@link #discard(String)} the new token.
+     *
+     * @param token The opaque refresh token presented by the client
+     * @return The outcome, the presented token's metadata and the new token
+     * @throws AuthenticationException if the token is unknown or has expired
+     */
+    public Rotation rotate(String token) {
+        String digest = TokenHashing.sha256Base64Url(token);
+        String newToken = TokenHashing.randomId(TOKEN_BYTES);
+        long now = System.currentTimeMillis();
+        
+        List<?> result;
+        try {
+            result = redisTemplate.execute(ROTATE_SCRIPT,
+                    List.of(KEY_PREFIX + digest, keyOf(newToken), TokenBlacklistService.GRACE_PREFIX + digest),
+                    TokenBlacklistService.FAMILY_PREFIX,
+                    String.valueOf(now),
+                    String.valueOf(now + jwtProperties.getRefreshExpiration()),
+                    String.valueOf(jwtProperties.getRefreshGraceWindow()),
+                    String.valueOf(jwtProperties.getRefreshExpiration()));
+        } catch (Exception e) {
+            log.error("Failed to rotate refresh token: {}", e.getMessage(), e);
+            throw new InternalServerException(ErrorCode.INTERNAL_ERROR, "error.internal", e);
+        }
+        
+        if (result == null || result.size() < 8) {
+            throw new AuthenticationException(ErrorCode.TOKEN_INVALID);
+        }
+        
+        long status = (Long) result.get(0);
+        String roles = (String) result.get(3);
+        ParsedToken presentedToken = new ParsedToken(
+                token,
+                (String) result.get(2),
+                (String) result.get(1),
+                roles == null || roles.isEmpty() ? List.of() : Arrays.asList(roles.split(",")),
+                new Date(Long.parseLong((String) result.get(6))),
+                new Date(Long.parseLong((String) result.get(7))),
+                // The digest identifies the token, e.g. for the grace window
+                digest,
+                Long.parseLong((String) result.get(5)),
+                (String) result.get(4)
+        );
+        
+        if (status == 1) {
+            return new Rotation(TokenBlacklistService.RevocationResult.REVOKED, presentedToken, newToken);
+        }
+        
+        TokenBlacklistService.RevocationResult revocationResult = status == 2
+                ? TokenBlacklistService.RevocationResult.RECENTLY_ROTATED
+                : status == 0
+                        ? TokenBlacklistService.RevocationResult.REUSED
+                        : TokenBlacklistService.RevocationResult.FAMILY_REVOKED;
+        return new Rotation(revocationResult, presentedToken, null);
+    }
+    
+    /**
+     * Revoke an opaque refresh token by deleting it.
+     * A failure is only logged: the caller revokes the token's session as well.
+     *
+     * @param token The opaque refresh token
+     */
+    public void discard(String token) {
+        try {
+            redisTemplate.delete(keyOf(token));
+        } catch (Exception e) {
+            log.warn("Failed to delete refresh token: {}", e.getMessage());
+        }
+    }
+    
+    private static String keyOf(String token) {
+        return KEY_PREFIX + TokenHashing.sha256Base64Url(token);
+    }
+}
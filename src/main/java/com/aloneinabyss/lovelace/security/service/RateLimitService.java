@@ -0,0 +1,167 @@
+package com.aloneinabyss.lovelace.security.service;
+
+import com.aloneinabyss.lovelace.config.RateLimitProperties;
+import com.aloneinabyss.lovelace.security.LocalRateLimiter;
+import com.aloneinabyss.lovelace.security.TokenHashing;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Distributed token-bucket rate limiter.
+ * Every request of a limited route takes a token from a bucket of its client IP and, when
+ * the route names one, a bucket of the account it targets. The buckets live in Redis and are
+ * checked and updated by a single script, so the limits hold across all instances.
+ * <p>
+ * Buckets Redis reports as empty are remembered by {@link LocalRateLimiter} until they refill,
+ * so clients that keep hammering a route are rejected without contacting Redis. If Redis is
+ * unavailable requests are let through: rate limiting must not take the login down with it.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RateLimitService {
+    
+    private static final String KEY_PREFIX = "rate-limit:";
+    private static final String METRIC_NAME = "rate.limit.requests";
+    
+    /**
+     * Digest bytes kept when turning an identity (e.g. an email address) into a bucket key
+     */
+    private static final int IDENTITY_KEY_BYTES = 12;
+    
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> RATE_LIMIT_SCRIPT =
+            RedisScript.of(new ClassPathResource("redis/rate_limit.lua"), List.class);
+    
+    private final RedisTemplate<String, String> redisTemplate;
+    private final LocalRateLimiter localRateLimiter;
+    private final MeterRegistry meterRegistry;
+    
+    /**
+     * Outcome of a rate-limit check
+     */
+    @Value
+    public static class Decision {
+        boolean allowed;
+        
+        /**
+         * Capacity of the most depleted bucket
+         */
+        long limit;
+        
+        /**
+         * Tokens left in the most depleted bucket
+         */
+        long remaining;
+        
+        /**
+         * Seconds until the most depleted bucket is full again
+         */
+        long resetSeconds;
+        
+        /**
+         * Seconds until the request would be allowed; 0 if it is allowed
+         */
+        long retryAfterSeconds;
+    }
+    
+    /**
+     * Take a token for a request of a limited route.
+     *
+     * @param routeName The name of the route, part of the bucket keys
+     * @param route The limits of the route
+     * @param clientIp The client IP address
+     * @param identity The account the request targets, or null to limit by client IP only; an empty
+     * identity (a body naming no account) is limited like any other, in one bucket shared by all such requests
+     * @return The decision, or empty if Redis could not be reached and the request is let through
+     */
+    public Optional<Decision> check(String routeName, RateLimitProperties.Route route, String clientIp, String identity) {
+        List<String> keys = new ArrayList<>(2);
+        List<Long> capacities = new ArrayList<>(2);
+        keys.add(KEY_PREFIX + routeName + ":ip:" + clientIp);
+        capacities.add(route.getIpCapacity());
+        
+        if (identity != null) {
+            String normalized = identity.trim().toLowerCase(Locale.ROOT);
+            keys.add(KEY_PREFIX + routeName + ":id:" + TokenHashing.truncatedSha256(normalized, IDENTITY_KEY_BYTES));
+            capacities.add(route.getIdentityCapacity());
+        }
+        
+        // Reject locally while a bucket is known to be empty
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < keys.size(); i++) {
+            long blockedFor = localRateLimiter.blockedFor(keys.get(i), now);
+            if (blockedFor > 0) {
+                count(routeName, "denied", "local");
+                long retryAfterSeconds = toSeconds(blockedFor);
+                return Optional.of(new Decision(false, capacities.get(i), 0, retryAfterSeconds, retryAfterSeconds));
+            }
+        }
+        
+        List<String> args = new ArrayList<>(keys.size() * 2);
+        for (long capacity : capacities) {
+            args.add(String.valueOf(capacity));
+            args.add(String.valueOf(route.getRefillPeriod()));
+        }
+        
+        List<?> result;
+        try {
+            result = redisTemplate.execute(RATE_LIMIT_SCRIPT, keys, args.toArray());
+        } catch (Exception e) {
+            log.warn("Rate limit check failed, letting request through: {}", e.getMessage());
+            count(routeName, "unavailable", "redis");
+            return Optional.empty();
+        }
+        
+        if (result == null || result.size() < 4 + keys.size()) {
+            count(routeName, "unavailable", "redis");
+            return Optional.empty();
+        }
+        
+        boolean allowed = (Long) result.get(0) == 1;
+        int lowest = ((Long) result.get(1)).intValue() - 1;
+        long retryAfter = 0;
+        
+        for (int i = 0; i < keys.size(); i++) {
+            long wait = (Long) result.get(4 + i);
+            if (wait > 0) {
+                localRateLimiter.block(keys.get(i), now + wait);
+                retryAfter = Math.max(retryAfter, wait);
+            }
+        }
+        
+        count(routeName, allowed ? "allowed" : "denied", "redis");
+        return Optional.of(new Decision(
+                allowed,
+                capacities.get(lowest),
+                Math.max(0, (Long) result.get(2)),
+                toSeconds((Long) result.get(3)),
+                toSeconds(retryAfter)));
+    }
+    
+    private void count(String routeName, String result, String source) {
+        Counter.builder(METRIC_NAME)
+                .description("Requests of rate-limited routes by outcome")
+                .tag("route", routeName)
+                .tag("result", result)
+                .tag("source", source)
+                .register(meterRegistry)
+                .increment();
+    }
+    
+    private static long toSeconds(long millis) {
+        return (millis + 999) / 1000;
+    }
+}
@@ -0,0 +1,190 @@
+package com.aloneinabyss.lovelace.security.service;
+
+import com.aloneinabyss.lovelace.config.JwtProperties;
+import com.aloneinabyss.lovelace.security.ParsedToken;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Revocation epochs ("not before" timestamps) for mass session revocation.
+ * Every token issued before the epoch of its user, of one of its roles, or before the
+ * global epoch is rejected. Revoking therefore costs a single write no matter how many
+ * tokens are outstanding, and checking a token is a few in-memory lookups.
+ * <p>
+ * Epochs are stored in Redis, mirrored in memory on every instance and propagated over
+ * Redis pub/sub. Epochs have second granularity, like the "iat" claim they are compared
+ * with: a token issued in the same second as a revocation is still accepted, so that a
+ * login right after "log out everywhere" is not rejected.
+ * <p>
+ * Once the longest token lifetime has passed after a revocation, every token it applies to
+ * has expired: the Redis key expires after that lifetime and local entries are pruned.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RevocationEpochService implements MessageListener {
+    
+    private static final String EPOCH_PREFIX = "auth:revocation-epoch:";
+    private static final String CHANNEL = "auth:revocation-epochs:changed";
+    
+    private static final String GLOBAL_SCOPE = "global";
+    private static final String USER_SCOPE_PREFIX = "user:";
+    private static final String ROLE_SCOPE_PREFIX = "role:";
+    
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final JwtProperties jwtProperties;
+    
+    private final Map<String, Epoch> epochs = new ConcurrentHashMap<>();
+    
+    /**
+     * Revocation epoch of a scope and when it stops mattering
+     */
+    @Value
+    private static class Epoch {
+        /**
+         * Tokens issued before this time are revoked (epoch seconds)
+         */
+        long notBefore;
+        
+        /**
+         * When every token the epoch applies to has expired (epoch milliseconds)
+         */
+        long expiresAt;
+    }
+    
+    /**
+     * Subscribe to epoch changes and seed the local map from Redis.
+     * Startup fails if the epochs cannot be loaded, since revoked tokens would be accepted otherwise.
+     */
+    @PostConstruct
+    public void initialize() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+        
+        List<String> keys = new ArrayList<>();
+        try (Cursor<String> cursor = redisTemplate.scan(
+                ScanOptions.scanOptions().match(EPOCH_PREFIX + "*").count(1000).build())) {
+            cursor.forEachRemaining(keys::add);
+        }
+        
+        List<String> stored = keys.isEmpty() ? List.of() : redisTemplate.opsForValue().multiGet(keys);
+        for (int i = 0; i < keys.size(); i++) {
+            // Keys that expired between the scan and the read come back as null
+            if (stored != null && stored.get(i) != null) {
+                updateLocal(keys.get(i).substring(EPOCH_PREFIX.length()), Long.parseLong(stored.get(i)));
+            }
+        }
+        log.info("Loaded {} revocation epochs from Redis", epochs.size());
+    }
+    
+    /**
+     * Check whether a token was issued before a revocation that applies to it.
+     *
+     * @param parsedToken The verified token
+     * @return true if the token has been revoked by a user, role or global epoch
+     */
+    public boolean isRevoked(ParsedToken parsedToken) {
+        // "iat" is in whole seconds
+        long issuedAt = parsedToken.getIssuedAt().getTime() / 1000;
+        
+        if (issuedAt < notBefore(GLOBAL_SCOPE)) {
+            return true;
+        }
+        
+        if (parsedToken.getUserId() != null && issuedAt < notBefore(USER_SCOPE_PREFIX + parsedToken.getUserId())) {
+            return true;
+        }
+        
+        for (String role : parsedToken.getRoles()) {
+            if (issuedAt < notBefore(ROLE_SCOPE_PREFIX + role)) {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Revoke every token issued so far for a user ("log out everywhere").
+     *
+     * @param userId The user id
+     */
+    public void revokeUser(String userId) {
+        revoke(USER_SCOPE_PREFIX + userId);
+    }
+    
+    /**
+     * Revoke every token issued so far for users holding a role.
+     *
+     * @param role The role name (e.g., "ROLE_ADMIN")
+     */
+    public void revokeRole(String role) {
+        revoke(ROLE_SCOPE_PREFIX + role);
+    }
+    
+    /**
+     * Revoke every token issued so far, for all users.
+     */
+    public void revokeAll() {
+        revoke(GLOBAL_SCOPE);
+    }
+    
+    /**
+     * Drop epochs older than the longest token lifetime; no token they could reject is still valid.
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void prune() {
+        long now = System.currentTimeMillis();
+        epochs.values().removeIf(epoch -> epoch.getExpiresAt() <= now);
+    }
+    
+    private void revoke(String scope) {
+        long epoch = System.currentTimeMillis() / 1000;
+        
+        updateLocal(scope, epoch);
+        redisTemplate.opsForValue().set(EPOCH_PREFIX + scope, String.valueOf(epoch),
+                Duration.ofMillis(jwtProperties.getMaxTokenLifetime()));
+        redisTemplate.convertAndSend(CHANNEL, scope + "=" + epoch);
+        log.info("Revoked all tokens issued before {} for scope: {}", epoch, scope);
+    }
+    
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.lastIndexOf('=');
+        
+        try {
+            updateLocal(body.substring(0, separator), Long.parseLong(body.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            log.warn("Ignoring malformed revocation epoch message: {}", body);
+        }
+    }
+    
+    private long notBefore(String scope) {
+        Epoch epoch = epochs.get(scope);
+        return epoch != null ? epoch.getNotBefore() : 0L;
+    }
+    
+    private void updateLocal(String scope, long epoch) {
+        Epoch next = new Epoch(epoch, epoch * 1000 + jwtProperties.getMaxTokenLifetime());
+        epochs.merge(scope, next, (current, updated) -> updated.getNotBefore() >= current.getNotBefore() ? updated : current);
+    }
+}
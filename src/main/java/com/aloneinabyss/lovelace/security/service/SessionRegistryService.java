@@ -0,0 +1,163 @@
+package com.aloneinabyss.lovelace.security.service;
+
+import com.aloneinabyss.lovelace.config.JwtProperties;
+import com.aloneinabyss.lovelace.shared.exception.ErrorCode;
+import com.aloneinabyss.lovelace.shared.exception.InternalServerException;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Registry of the live sessions of each user.
+ * Every user has a Redis sorted set of session ids scored by the expiry of the session's
+ * refresh token, so listing, adding and removing a session are O(log n) and never need a scan.
+ * <p>
+ * The number of sessions per user is capped by {@code jwt.max-sessions}: registering a session
+ * over the cap evicts and revokes the session refreshed least recently, in the same atomic step.
+ * Login registers sessions, refresh extends them and logout removes them.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SessionRegistryService {
+    
+    private final RedisTemplate<String, String> redisTemplate;
+    private final BlacklistFilterService blacklistFilterService;
+    private final JwtProperties jwtProperties;
+    
+    static final String KEY_PREFIX = "sessions:user:";
+    
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> REGISTER_SCRIPT =
+            RedisScript.of(new ClassPathResource("redis/session_register.lua"), List.class);
+    private static final RedisScript<Long> REVOKE_SCRIPT =
+            RedisScript.of(new ClassPathResource("redis/session_revoke.lua"), Long.class);
+    
+    /**
+     * A live session of a user
+     */
+    @Value
+    public static class Session {
+        String sessionId;
+        
+        /**
+         * Expiry of the session's refresh token (epoch milliseconds)
+         */
+        long expiresAt;
+    }
+    
+    /**
+     * Register a new session, evicting the user's oldest sessions if the cap is exceeded.
+     *
+     * @param userId The user the session belongs to
+     * @param sessionId The new session
+     * @param expiresAt Expiry of the session's refresh token (epoch milliseconds)
+     */
+    public void register(String userId, String sessionId, long expiresAt) {
+        update(userId, sessionId, expiresAt, false);
+    }
+    
+    /**
+     * Extend a registered session after its refresh token was rotated.
+     * A session that is no longer registered, e.g. because it was evicted meanwhile, is not added back.
+     *
+     * @param userId The user the session belongs to
+     * @param sessionId The refreshed session
+     * @param expiresAt Expiry of the new refresh token (epoch milliseconds)
+     */
+    public void extend(String userId, String sessionId, long expiresAt) {
+        update(userId, sessionId, expiresAt, true);
+    }
+    
+    /**
+     * List the live sessions of a user, the one expiring first first.
+     *
+     * @param userId The user whose sessions to list
+     * @return The user's sessions
+     */
+    public List<Session> list(String userId) {
+        Set<ZSetOperations.TypedTuple<String>> entries = redisTemplate.opsForZSet()
+                .rangeByScoreWithScores(KEY_PREFIX + userId, System.currentTimeMillis(), Double.POSITIVE_INFINITY);
+        
+        List<Session> sessions = new ArrayList<>();
+        if (entries != null) {
+            for (ZSetOperations.TypedTuple<String> entry : entries) {
+                sessions.add(new Session(entry.getValue(), entry.getScore().longValue()));
+            }
+        }
+        return sessions;
+    }
+    
+    /**
+     * Revoke one session of a user: every token of the session stops working.
+     *
+     * @param userId The user the session must belong to
+     * @param sessionId The session to revoke
+     * @return false if the user has no such session
+     */
+    public boolean revoke(String userId, String sessionId) {
+        Long revoked;
+        try {
+            revoked = redisTemplate.execute(REVOKE_SCRIPT,
+                    List.of(KEY_PREFIX + userId, TokenBlacklistService.FAMILY_PREFIX + sessionId),
+                    sessionId,
+                    String.valueOf(jwtProperties.getRefreshExpiration()));
+        } catch (Exception e) {
+            log.error("Failed to revoke session: {}", e.getMessage(), e);
+            throw new InternalServerException(ErrorCode.INTERNAL_ERROR, "error.internal", e);
+        }
+        
+        if (revoked == null || revoked == 0) {
+            return false;
+        }
+        
+        blacklistFilterService.publish(BlacklistFilterService.familyEntry(sessionId));
+        log.info("Session revoked for user: {}", userId);
+        return true;
+    }
+    
+    /**
+     * Forget every session of a user, after all of their tokens have been revoked by other means.
+     *
+     * @param userId The user whose sessions to forget
+     */
+    public void clear(String userId) {
+        try {
+            redisTemplate.delete(KEY_PREFIX + userId);
+        } catch (Exception e) {
+            log.warn("Failed to clear sessions of user {}: {}", userId, e.getMessage());
+        }
+    }
+    
+    private void update(String userId, String sessionId, long expiresAt, boolean onlyExisting) {
+        List<?> evicted;
+        try {
+            evicted = redisTemplate.execute(REGISTER_SCRIPT, List.of(KEY_PREFIX + userId),
+                    sessionId,
+                    String.valueOf(expiresAt),
+                    String.valueOf(System.currentTimeMillis()),
+                    String.valueOf(jwtProperties.getMaxSessions()),
+                    onlyExisting ? "XX" : "",
+                    TokenBlacklistService.FAMILY_PREFIX,
+                    String.valueOf(jwtProperties.getRefreshExpiration()));
+        } catch (Exception e) {
+            log.error("Failed to register session: {}", e.getMessage(), e);
+            throw new InternalServerException(ErrorCode.INTERNAL_ERROR, "error.internal", e);
+        }
+        
+        if (evicted != null && !evicted.isEmpty()) {
+            evicted.forEach(id -> blacklistFilterService.publish(BlacklistFilterService.familyEntry((String) id)));
+            log.info("Evicted {} session(s) of user {} over the limit of {}",
+                    evicted.size(), userId, jwtProperties.getMaxSessions());
+        }
+    }
+}
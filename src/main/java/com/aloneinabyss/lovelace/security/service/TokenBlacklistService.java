@@ -1,19 +1,47 @@
 package com.aloneinabyss.lovelace.security.service;
 
-import com.aloneinabyss.lovelace.security.JwtTokenProvider;
+import com.aloneinabyss.lovelace.config.JwtProperties;
+import com.aloneinabyss.lovelace.security.ParsedToken;
+import com.aloneinabyss.lovelace.security.TokenHashing;
+import com.aloneinabyss.lovelace.security.VerifiedTokenCache;
+import com.aloneinabyss.lovelace.shared.exception.ConflictException;
 import com.aloneinabyss.lovelace.shared.exception.ErrorCode;
 import com.aloneinabyss.lovelace.shared.exception.InternalServerException;
 import lombok.RequiredArgsConstructor;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
-import java.util.Date;
-import java.util.concurrent.TimeUnit;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
 
 /**
  * Service for managing JWT token blacklist using Redis.
- * Blacklisted tokens are stored with automatic expiration based on their original expiry time.
+ * Only the short token id ("jti") is stored, grouped into sets by the hour in which the
+ * token expires. Each set expires as a whole once all of its tokens have expired, so the
+ * number of keys stays bounded by the refresh token lifetime in hours.
+ * <p>
+ * A whole session (every token sharing a "sid" claim) is revoked with a single family key
+ * that lives as long as a refresh token. Every primitive is a Lua script, so each check or
+ * revocation is one atomic round trip. The scripts touch several keys and therefore assume
+ * a single Redis node or primary.
+ * <p>
+ * The tokens a refresh token was rotated into are kept for the grace window encrypted with
+ * AES-GCM under a key derived from the rotated token, so they can only be read back by a
+ * request presenting that token, not by anyone who can read Redis.
  */
 @Slf4j
 @Service
@@ -21,54 +49,342 @@ import java.util.concurrent.TimeUnit;
 public class TokenBlacklistService {
     
     private final RedisTemplate<String, String> redisTemplate;
-    private final JwtTokenProvider jwtTokenProvider;
+    private final VerifiedTokenCache verifiedTokenCache;
+    private final BlacklistFilterService blacklistFilterService;
+    private final JwtProperties jwtProperties;
     
-    private static final String BLACKLIST_PREFIX = "blacklist:token:";
+    static final String BUCKET_PREFIX = "blacklist:jti:";
+    
+    static final String FAMILY_PREFIX = "blacklist:family:";
+    
+    /**
+     * Holds the tokens a refresh token was rotated into, for the length of the grace window
+     */
+    static final String GRACE_PREFIX = "blacklist:grace:";
+    
+    /**
+     * Prefix of the rotated token when deriving the grace key, which keeps the derived key
+     * distinct from the token digests used as Redis keys
+     */
+    private static final String GRACE_KEY_CONTEXT = "refresh-grace:";
+    
+    private static final int GRACE_IV_BYTES = 12;
+    private static final int GRACE_TAG_BITS = 128;
+    
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+    
+    /**
+     * Key format used before token ids existed; still checked for tokens without a "jti" claim
+     */
+    static final String LEGACY_BLACKLIST_PREFIX = "blacklist:token:";
+    
+    /**
+     * Width of an expiry bucket in seconds
+     */
+    private static final long BUCKET_SECONDS = 3600;
+    
+    private static final RedisScript<Long> REVOKE_SCRIPT =
+            RedisScript.of(new ClassPathResource("redis/revoke.lua"), Long.class);
+    private static final RedisScript<Long> CHECK_AND_REVOKE_SCRIPT =
+            RedisScript.of(new ClassPathResource("redis/check_and_revoke.lua"), Long.class);
+    private static final RedisScript<Long> IS_REVOKED_SCRIPT =
+            RedisScript.of(new ClassPathResource("redis/is_revoked.lua"), Long.class);
+    
+    /**
+     * Outcome of {@link #checkAndRevoke(ParsedToken)}
+     */
+    public enum RevocationResult {
+        /**
+         * The token was valid and is now revoked: the caller may use it
+         */
+        REVOKED,
+        
+        /**
+         * The token was rotated by another request within the grace window; the caller should
+         * answer with that rotation's tokens, see {@link #findRotation(ParsedToken)}
+         */
+        RECENTLY_ROTATED,
+        
+        /**
+         * The token had already been used; its whole session has now been revoked
+         */
+        REUSED,
+        
+        /**
+         * The token's session had been revoked
+         */
+        FAMILY_REVOKED
+    }
     
     /**
      * Blacklist a JWT token until its natural expiration time.
-     * The token will be automatically removed from Redis after expiration.
+     * The token id is added to the set of its expiry bucket, which Redis removes after
+     * the last token in the bucket has expired.
+     *
+     * @param parsedToken The already verified JWT token to blacklist
+     */
+    public void blacklistToken(ParsedToken parsedToken) {
+        revoke(List.of(parsedToken), null);
+    }
+    
+    /**
+     * Blacklist several tokens, and optionally every token of a session, in one atomic round trip.
+     * A revoked session is also removed from the session registry of the tokens' user.
+     * Tokens that have already expired are skipped.
      *
-     * @param token The JWT token to blacklist
+     * @param parsedTokens The already verified tokens to blacklist
+     * @param sessionId The session to revoke as a whole, or null to revoke only the given tokens
      */
-    public void blacklistToken(String token) {
+    public void revoke(List<ParsedToken> parsedTokens, String sessionId) {
+        List<ParsedToken> live = parsedTokens.stream().filter(token -> token.getTimeToLiveMillis() > 0).toList();
+        
+        if (live.isEmpty() && sessionId == null) {
+            log.debug("Tokens are already expired, no need to blacklist");
+            return;
+        }
+        
+        String userId = parsedTokens.stream()
+                .map(ParsedToken::getUserId)
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElse("");
+        
+        List<String> keys = new ArrayList<>(live.size() + 2);
+        List<String> args = new ArrayList<>(live.size() * 2 + 2);
+        keys.add(FAMILY_PREFIX + (sessionId != null ? sessionId : ""));
+        keys.add(SessionRegistryService.KEY_PREFIX + userId);
+        args.add(sessionId != null ? String.valueOf(jwtProperties.getRefreshExpiration()) : "0");
+        args.add(sessionId != null ? sessionId : "");
+        
+        for (ParsedToken parsedToken : live) {
+            long bucket = bucketOf(parsedToken);
+            keys.add(BUCKET_PREFIX + bucket);
+            args.add(parsedToken.getRevocationId());
+            args.add(String.valueOf(bucketExpiry(bucket)));
+        }
+        
         try {
-            Date expirationDate = jwtTokenProvider.extractExpiration(token);
-            long currentTime = System.currentTimeMillis();
-            long expirationTime = expirationDate.getTime();
-            
-            // Calculate time until token expires
-            long timeToLive = expirationTime - currentTime;
-            
-            // Only blacklist if token hasn't expired yet
-            if (timeToLive > 0) {
-                String key = BLACKLIST_PREFIX + token;
-                redisTemplate.opsForValue().set(key, "blacklisted", timeToLive, TimeUnit.MILLISECONDS);
-                log.info("Token blacklisted successfully. Will expire in {} ms", timeToLive);
-            } else {
-                log.debug("Token is already expired, no need to blacklist");
-            }
+            redisTemplate.execute(REVOKE_SCRIPT, keys, args.toArray());
         } catch (Exception e) {
-            log.error("Failed to blacklist token: {}", e.getMessage(), e);
+            log.error("Failed to blacklist tokens: {}", e.getMessage(), e);
             throw new InternalServerException(ErrorCode.INTERNAL_ERROR, "error.internal", e);
         }
+        
+        for (ParsedToken parsedToken : live) {
+            verifiedTokenCache.invalidate(parsedToken.getToken());
+            blacklistFilterService.publish(parsedToken.getRevocationId());
+        }
+        if (sessionId != null) {
+            blacklistFilterService.publish(BlacklistFilterService.familyEntry(sessionId));
+        }
+        log.info("Blacklisted {} token(s){}", live.size(), sessionId != null ? " and their session" : "");
+    }
+    
+    /**
+     * Atomically check that a token has not been used yet and revoke it, so it can be used exactly once.
+     * If the token had already been used, its session is revoked as well, since one of its tokens
+     * has evidently been copied, unless it was rotated within the grace window: concurrent
+     * refreshes from the same client are not reuse.
+     *
+     * @param parsedToken The already verified token, typically a refresh token
+     * @return Whether the caller may proceed with the token
+     */
+    public RevocationResult checkAndRevoke(ParsedToken parsedToken) {
+        long bucket = bucketOf(parsedToken);
+        String sessionId = parsedToken.getSessionId();
+        boolean legacy = parsedToken.getTokenId() == null;
+        
+        Long result;
+        try {
+            result = redisTemplate.execute(CHECK_AND_REVOKE_SCRIPT,
+                    List.of(BUCKET_PREFIX + bucket, FAMILY_PREFIX + (sessionId != null ? sessionId : ""),
+                            LEGACY_BLACKLIST_PREFIX + (legacy ? parsedToken.getToken() : ""),
+                            GRACE_PREFIX + parsedToken.getRevocationId()),
+                    parsedToken.getRevocationId(),
+                    String.valueOf(bucketExpiry(bucket)),
+                    sessionId != null ? String.valueOf(jwtProperties.getRefreshExpiration()) : "0",
+                    legacy ? "1" : "0",
+                    String.valueOf(jwtProperties.getRefreshGraceWindow()));
+        } catch (Exception e) {
+            log.error("Failed to check and revoke token: {}", e.getMessage(), e);
+            throw new InternalServerException(ErrorCode.INTERNAL_ERROR, "error.internal", e);
+        }
+        
+        if (result != null && result == 1) {
+            verifiedTokenCache.invalidate(parsedToken.getToken());
+            blacklistFilterService.publish(parsedToken.getRevocationId());
+            return RevocationResult.REVOKED;
+        }
+        
+        if (result != null && result == 2) {
+            return RevocationResult.RECENTLY_ROTATED;
+        }
+        
+        if (result != null && result == 0) {
+            if (sessionId != null) {
+                blacklistFilterService.publish(BlacklistFilterService.familyEntry(sessionId));
+            }
+            return RevocationResult.REUSED;
+        }
+        return RevocationResult.FAMILY_REVOKED;
+    }
+    
+    /**
+     * Remember the tokens a refresh token was rotated into, so that requests racing with the
+     * rotation within the grace window receive the same tokens.
+     * They are stored encrypted under a key derived from the rotated token.
+     * A failure is only logged: the rotation itself has already succeeded.
+     *
+     * @param parsedToken The rotated refresh token, as passed to {@link #checkAndRevoke(ParsedToken)}
+     * @param accessToken The newly issued access token
+     * @param refreshToken The newly issued refresh token
+     */
+    public void recordRotation(ParsedToken parsedToken, String accessToken, String refreshToken) {
+        long graceWindow = jwtProperties.getRefreshGraceWindow();
+        if (graceWindow <= 0) {
+            return;
+        }
+        
+        try {
+            // Only fill in the key created by the check, so an expired window is not reopened
+            redisTemplate.opsForValue().setIfPresent(GRACE_PREFIX + parsedToken.getRevocationId(),
+                    seal(parsedToken.getToken(), accessToken + " " + refreshToken), Duration.ofMillis(graceWindow));
+        } catch (Exception e) {
+            log.warn("Failed to record refresh token rotation: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Get the tokens a refresh token was rotated into within the grace window.
+     *
+     * @param parsedToken The rotated refresh token
+     * @return The access and refresh token issued by the rotation, or empty if they are not available
+     * @throws ConflictException if the rotation is still in progress; the client should retry
+     */
+    public Optional<RotatedTokens> findRotation(ParsedToken parsedToken) {
+        String value;
+        try {
+            value = redisTemplate.opsForValue().get(GRACE_PREFIX + parsedToken.getRevocationId());
+        } catch (Exception e) {
+            log.warn("Failed to read refresh token rotation: {}", e.getMessage());
+            return Optional.empty();
+        }
+        
+        // Missing means the window closed; empty means the rotation is still in progress
+        if (value == null) {
+            return Optional.empty();
+        }
+        if (value.isEmpty()) {
+            throw new ConflictException(ErrorCode.REFRESH_IN_PROGRESS);
+        }
+        
+        String tokens = open(parsedToken.getToken(), value);
+        int separator = tokens != null ? tokens.indexOf(' ') : -1;
+        if (separator <= 0) {
+            log.warn("Discarding unreadable refresh token rotation");
+            return Optional.empty();
+        }
+        return Optional.of(new RotatedTokens(tokens.substring(0, separator), tokens.substring(separator + 1)));
     }
     
     /**
      * Check if a token is blacklisted.
+     * Tokens the local filter rules out are answered without contacting Redis.
+     *
+     * @param parsedToken The already verified JWT token to check
+     * @return true if the token is blacklisted, false otherwise
+     */
+    public boolean isBlacklisted(ParsedToken parsedToken) {
+        if (!blacklistFilterService.mightBeBlacklisted(parsedToken)) {
+            return false;
+        }
+        
+        boolean blacklisted = isBlacklistedInRedis(parsedToken);
+        blacklistFilterService.recordLookup(blacklisted);
+        return blacklisted;
+    }
+    
+    /**
+     * Check if a token or its session is blacklisted, always asking Redis.
      *
-     * @param token The JWT token to check
+     * @param parsedToken The already verified JWT token to check
      * @return true if the token is blacklisted, false otherwise
      */
-    public boolean isBlacklisted(String token) {
+    public boolean isBlacklistedInRedis(ParsedToken parsedToken) {
+        String sessionId = parsedToken.getSessionId();
+        boolean legacy = parsedToken.getTokenId() == null;
+        
         try {
-            String key = BLACKLIST_PREFIX + token;
-            Boolean exists = redisTemplate.hasKey(key);
-            return Boolean.TRUE.equals(exists);
+            Long result = redisTemplate.execute(IS_REVOKED_SCRIPT,
+                    List.of(BUCKET_PREFIX + bucketOf(parsedToken), FAMILY_PREFIX + (sessionId != null ? sessionId : ""),
+                            // Tokens issued before token ids existed may have been blacklisted under the old key format
+                            LEGACY_BLACKLIST_PREFIX + (legacy ? parsedToken.getToken() : "")),
+                    parsedToken.getRevocationId(),
+                    sessionId != null ? "1" : "0",
+                    legacy ? "1" : "0");
+            return result == null || result != 0;
         } catch (Exception e) {
             log.error("Failed to check token blacklist status: {}", e.getMessage(), e);
             // Fail securely - if we can't check, treat as blacklisted
             return true;
         }
     }
+    
+    /**
+     * Tokens issued by a refresh token rotation
+     */
+    @Value
+    public static class RotatedTokens {
+        String accessToken;
+        String refreshToken;
+    }
+    
+    /**
+     * Encrypt a grace window payload under a key derived from the rotated token.
+     *
+     * @return The random IV followed by the ciphertext, base64url-encoded
+     */
+    private static String seal(String rotatedToken, String plaintext) throws GeneralSecurityException {
+        byte[] iv = new byte[GRACE_IV_BYTES];
+        SECURE_RANDOM.nextBytes(iv);
+        
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, graceKey(rotatedToken), new GCMParameterSpec(GRACE_TAG_BITS, iv));
+        byte[] ciphertext = cipher.doFinal(plaintext.getBytes(StandardCharsets.UTF_8));
+        
+        byte[] sealed = new byte[iv.length + ciphertext.length];
+        System.arraycopy(iv, 0, sealed, 0, iv.length);
+        System.arraycopy(ciphertext, 0, sealed, iv.length, ciphertext.length);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(sealed);
+    }
+    
+    /**
+     * Decrypt a grace window payload written by {@link #seal(String, String)}.
+     *
+     * @return The plaintext, or null if the payload is malformed or was not sealed for this token
+     */
+    private static String open(String rotatedToken, String value) {
+        try {
+            byte[] sealed = Base64.getUrlDecoder().decode(value);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, graceKey(rotatedToken),
+                    new GCMParameterSpec(GRACE_TAG_BITS, sealed, 0, GRACE_IV_BYTES));
+            return new String(cipher.doFinal(sealed, GRACE_IV_BYTES, sealed.length - GRACE_IV_BYTES),
+                    StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException | GeneralSecurityException e) {
+            return null;
+        }
+    }
+    
+    private static SecretKeySpec graceKey(String rotatedToken) {
+        return new SecretKeySpec(TokenHashing.sha256(GRACE_KEY_CONTEXT + rotatedToken), "AES");
+    }
+    
+    private static long bucketOf(ParsedToken parsedToken) {
+        return parsedToken.getExpiration().getTime() / 1000 / BUCKET_SECONDS;
+    }
+    
+    private static long bucketExpiry(long bucket) {
+        return (bucket + 1) * BUCKET_SECONDS;
+    }
 }
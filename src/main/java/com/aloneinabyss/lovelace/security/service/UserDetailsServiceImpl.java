@@ -1,6 +1,5 @@
 package com.aloneinabyss.lovelace.security.service;
 
-import com.aloneinabyss.lovelace.auth.model.User;
 import com.aloneinabyss.lovelace.auth.repository.UserRepository;
 import com.aloneinabyss.lovelace.security.UserPrincipal;
 import lombok.RequiredArgsConstructor;
@@ -10,18 +9,38 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+/**
+ * Loads user principals through {@link UserPrincipalCache}, so repeated lookups of the same
+ * user are served from memory or Redis instead of MongoDB. Database reads fetch only the
+ * authentication projection of the user.
+ * Principals carry no password hash; credentials are verified by the login path in
+ * AuthService, which reads the user directly.
+ */
 @Service
 @RequiredArgsConstructor
 public class UserDetailsServiceImpl implements UserDetailsService {
     
     private final UserRepository userRepository;
+    private final UserPrincipalCache userPrincipalCache;
     
     @Override
     @Transactional
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found with username: " + username));
-        
-        return UserPrincipal.build(user);
+        return userPrincipalCache.getByUsername(username, () -> userRepository.findAuthViewByUsername(username)
+                .map(UserPrincipal::build)
+                .orElseThrow(() -> new UsernameNotFoundException("User not found with username: " + username)));
+    }
+    
+    /**
+     * Load a user by primary key, for callers that already know the id (e.g. from the "userId" claim).
+     *
+     * @param userId The user id
+     * @return The user principal
+     * @throws UsernameNotFoundException if no user has this id
+     */
+    public UserPrincipal loadUserById(String userId) throws UsernameNotFoundException {
+        return userPrincipalCache.getById(userId, () -> userRepository.findAuthViewById(userId)
+                .map(UserPrincipal::build)
+                .orElseThrow(() -> new UsernameNotFoundException("User not found with id: " + userId)));
     }
 }
@@ -0,0 +1,290 @@
+package com.aloneinabyss.lovelace.security.service;
+
+import com.aloneinabyss.lovelace.config.PrincipalCacheProperties;
+import com.aloneinabyss.lovelace.security.UserPrincipal;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Two-tier cache of user principals: a short-lived in-process cache (L1) in front of Redis (L2).
+ * Entries are keyed by username or by user id, depending on how the caller looks the user up.
+ * Any change to a user must call {@link #invalidate(String, String)}, which removes both Redis
+ * entries and broadcasts their keys so that every instance drops its local copies.
+ * The local TTL bounds staleness if a message is missed.
+ * <p>
+ * Each key has an invalidation generation in Redis. A load records the generation before
+ * reading the database and only writes its result back if the generation is unchanged, so a
+ * load racing with an invalidation cannot put the stale principal back into either tier.
+ * <p>
+ * Cached principals never contain the password hash; they carry what request authentication
+ * needs (id, username, email, roles, enabled flag, passwordChangedAt and credential version).
+ * L1 metrics are exposed as "cache.*" tagged cache=users.principals, L2 lookups as
+ * "users.principals.redis{result}".
+ */
+@Slf4j
+@Service
+public class UserPrincipalCache implements MessageListener {
+    
+    private static final String CACHE_NAME = "users.principals";
+    private static final String KEY_PREFIX = "principal:";
+    private static final String USERNAME_KEY = "username:";
+    private static final String ID_KEY = "id:";
+    private static final String GENERATION_PREFIX = KEY_PREFIX + "gen:";
+    private static final String CHANNEL = "principal:invalidated";
+    
+    private static final RedisScript<Long> PUT_SCRIPT =
+            RedisScript.of(new ClassPathResource("redis/principal_cache_put.lua"), Long.class);
+    private static final RedisScript<Long> INVALIDATE_SCRIPT =
+            RedisScript.of(new ClassPathResource("redis/principal_cache_invalidate.lua"), Long.class);
+    
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final ObjectMapper objectMapper;
+    private final PrincipalCacheProperties properties;
+    
+    private final Cache<String, UserPrincipal> localCache;
+    private final Counter redisHits;
+    private final Counter redisMisses;
+    
+    public UserPrincipalCache(RedisTemplate<String, String> redisTemplate,
+                              RedisMessageListenerContainer listenerContainer,
+                              ObjectMapper objectMapper,
+                              PrincipalCacheProperties properties,
+                              MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+        
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(properties.getLocalMaximumSize())
+                .expireAfterWrite(Duration.ofMillis(properties.getLocalTtl()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, localCache, CACHE_NAME);
+        
+        this.redisHits = redisCounter(meterRegistry, "hit");
+        this.redisMisses = redisCounter(meterRegistry, "miss");
+    }
+    
+    @PostConstruct
+    public void initialize() {
+        if (properties.isEnabled()) {
+            listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+        }
+    }
+    
+    /**
+     * Get a principal by username from the local cache, then Redis, then the loader.
+     *
+     * @param username The username
+     * @param loader Loads the principal from the database on a miss in both tiers
+     * @return The principal
+     */
+    public UserPrincipal getByUsername(String username, Supplier<UserPrincipal> loader) {
+        return get(USERNAME_KEY + username, loader);
+    }
+    
+    /**
+     * Get a principal by user id from the local cache, then Redis, then the loader.
+     *
+     * @param userId The user id
+     * @param loader Loads the principal from the database on a miss in both tiers
+     * @return The principal
+     */
+    public UserPrincipal getById(String userId, Supplier<UserPrincipal> loader) {
+        return get(ID_KEY + userId, loader);
+    }
+    
+    /**
+     * Remove a user's principal from Redis and from the local cache of every instance.
+     *
+     * @param userId The user id
+     * @param username The username
+     */
+    public void invalidate(String userId, String username) {
+        String idKey = ID_KEY + userId;
+        String usernameKey = USERNAME_KEY + username;
+        localCache.invalidateAll(List.of(idKey, usernameKey));
+        
+        if (!properties.isEnabled()) {
+            return;
+        }
+        
+        try {
+            redisTemplate.execute(INVALIDATE_SCRIPT,
+                    List.of(KEY_PREFIX + idKey, GENERATION_PREFIX + idKey, KEY_PREFIX + usernameKey, GENERATION_PREFIX + usernameKey),
+                    String.valueOf(properties.getRedisTtl()));
+            redisTemplate.convertAndSend(CHANNEL, idKey);
+            redisTemplate.convertAndSend(CHANNEL, usernameKey);
+        } catch (Exception e) {
+            log.error("Failed to invalidate cached principal for {}: {}", username, e.getMessage());
+        }
+    }
+    
+    /**
+     * Loaded principals are written to both tiers, unless the key was invalidated while loading.
+     */
+    private UserPrincipal get(String key, Supplier<UserPrincipal> loader) {
+        if (!properties.isEnabled()) {
+            return loader.get();
+        }
+        
+        boolean[] stale = new boolean[1];
+        UserPrincipal principal = localCache.get(key, cacheKey -> {
+            RedisEntry cached = readRedis(cacheKey);
+            if (cached.getPrincipal() != null) {
+                return cached.getPrincipal();
+            }
+            
+            UserPrincipal loaded = loader.get();
+            stale[0] = !writeRedis(cacheKey, loaded, cached.getGeneration());
+            return loaded;
+        });
+        
+        // The caller still gets the principal it loaded, but it is not kept for later requests
+        if (stale[0]) {
+            localCache.asMap().remove(key, principal);
+        }
+        return principal;
+    }
+    
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        localCache.invalidate(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Read the cached principal and the invalidation generation of a key in one round trip.
+     */
+    private RedisEntry readRedis(String key) {
+        try {
+            List<String> values = redisTemplate.opsForValue().multiGet(List.of(KEY_PREFIX + key, GENERATION_PREFIX + key));
+            String json = values != null ? values.get(0) : null;
+            String generation = values != null && values.get(1) != null ? values.get(1) : "";
+            
+            if (json == null) {
+                redisMisses.increment();
+                return new RedisEntry(null, generation);
+            }
+            
+            redisHits.increment();
+            return new RedisEntry(objectMapper.readValue(json, CachedPrincipal.class).toPrincipal(), generation);
+        } catch (Exception e) {
+            // Redis is only a cache here; fall back to the database without caching the result
+            log.warn("Failed to read cached principal for {}: {}", key, e.getMessage());
+            return new RedisEntry(null, null);
+        }
+    }
+    
+    /**
+     * Cache a loaded principal in Redis if the key's generation is still the one read before loading.
+     *
+     * @return true if the principal is current and may be cached locally as well
+     */
+    private boolean writeRedis(String key, UserPrincipal principal, String generation) {
+        if (generation == null) {
+            // Redis was unreachable when loading started; only the local TTL bounds the entry
+            return true;
+        }
+        
+        try {
+            Long written = redisTemplate.execute(PUT_SCRIPT,
+                    List.of(KEY_PREFIX + key, GENERATION_PREFIX + key),
+                    objectMapper.writeValueAsString(CachedPrincipal.from(principal)),
+                    String.valueOf(properties.getRedisTtl()),
+                    generation);
+            return written == null || written == 1;
+        } catch (Exception e) {
+            log.warn("Failed to cache principal for {}: {}", key, e.getMessage());
+            return true;
+        }
+    }
+    
+    private static Counter redisCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder(CACHE_NAME + ".redis")
+                .description("Principal lookups in Redis after a local cache miss")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Principal cached in Redis, if any, and the generation of its key when it was read
+     */
+    @Value
+    private static class RedisEntry {
+        UserPrincipal principal;
+        
+        /**
+         * Invalidation generation ('' if the key was never invalidated), or null if Redis could not be read
+         */
+        String generation;
+    }
+    
+    /**
+     * Serialized form of a {@link UserPrincipal}, without the password hash.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class CachedPrincipal {
+        private String id;
+        private String username;
+        private String email;
+        private List<String> roles;
+        private boolean enabled;
+        private LocalDateTime passwordChangedAt;
+        private long credentialVersion;
+        
+        static CachedPrincipal from(UserPrincipal principal) {
+            return new CachedPrincipal(
+                    principal.getId(),
+                    principal.getUsername(),
+                    principal.getEmail(),
+                    principal.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList(),
+                    principal.isEnabled(),
+                    principal.getPasswordChangedAt(),
+                    principal.getCredentialVersion()
+            );
+        }
+        
+        UserPrincipal toPrincipal() {
+            return new UserPrincipal(
+                    id,
+                    username,
+                    email,
+                    null,
+                    roles.stream().map(SimpleGrantedAuthority::new).toList(),
+                    enabled,
+                    passwordChangedAt,
+                    credentialVersion
+            );
+        }
+    }
+}
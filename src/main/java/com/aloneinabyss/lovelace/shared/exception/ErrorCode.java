@@ -33,11 +33,24 @@ public enum ErrorCode {
     EMAIL_ALREADY_VERIFIED("auth.email.already.verified"),
     PASSWORD_RESET_PENDING("auth.password.reset.pending"),
     EMAIL_VERIFICATION_PENDING("auth.email.verification.pending"),
+    PASSWORD_CHANGED_CONCURRENTLY("auth.password.changed.concurrently"),
+    RESET_TOKEN_ALREADY_USED("auth.password.reset.token.used"),
+    REFRESH_IN_PROGRESS("auth.refresh.token.in.progress"),
     
     // Not found errors (404)
     USER_NOT_FOUND("auth.user.not.found"),
+    SESSION_NOT_FOUND("auth.session.not.found"),
     RESOURCE_NOT_FOUND("resource.not.found"),
     
+    // Payload too large errors (413)
+    PAYLOAD_TOO_LARGE("error.payload.too.large"),
+    
+    // Rate limit errors (429)
+    TOO_MANY_REQUESTS("error.too.many.requests"),
+    
+    // Service unavailable errors (503)
+    SERVICE_BUSY("error.service.busy"),
+    
     // Server errors (500)
     EMAIL_SEND_FAILED("email.send.failed"),
     INTERNAL_ERROR("error.internal");
@@ -0,0 +1,23 @@
+package com.aloneinabyss.lovelace.shared.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Exception thrown when the server is temporarily unable to handle a request.
+ * HTTP Status: 503 Service Unavailable, with a Retry-After header
+ * Examples: Password hashing capacity exhausted during a login burst
+ */
+@Getter
+public class ServiceUnavailableException extends ApplicationException {
+    
+    /**
+     * Seconds the client should wait before retrying
+     */
+    private final long retryAfterSeconds;
+    
+    public ServiceUnavailableException(ErrorCode errorCode, long retryAfterSeconds, Object... messageArgs) {
+        super(errorCode.name(), errorCode.getMessageKey(), HttpStatus.SERVICE_UNAVAILABLE, messageArgs);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,92 @@
+package com.aloneinabyss.lovelace.shared.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.Locale;
+
+/**
+ * Email waiting in the outbox to be delivered by the outbox workers.
+ * The message is rendered when it is enqueued, so delivery does not depend on the request locale.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "email_outbox")
+@CompoundIndex(name = "status_nextAttemptAt", def = "{ 'status': 1, 'nextAttemptAt': 1 }")
+public class OutboxEmail {
+    
+    @Id
+    private String id;
+    
+    private String to;
+    
+    /**
+     * Recipient domain, lower case; lets the workers skip domains they are throttling when claiming
+     */
+    private String domain;
+    
+    private String subject;
+    
+    /**
+     * Message text; removed once the email is sent or dead-lettered since it may contain one-time links
+     */
+    private String body;
+    
+    private Status status;
+    
+    /**
+     * Number of delivery attempts started, including the one in progress
+     */
+    private int attempts;
+    
+    /**
+     * The message is not picked up before this instant. Claiming a message pushes it forward
+     * by the lease time, so a message held by a crashed worker is retried once the lease ends.
+     */
+    private LocalDateTime nextAttemptAt;
+    
+    private String lastError;
+    
+    private LocalDateTime createdAt;
+    
+    /**
+     * Set once the email is sent; MongoDB removes sent emails a day later
+     */
+    @Indexed(name = "sentAt_ttl", expireAfter = "1d")
+    private LocalDateTime sentAt;
+    
+    /**
+     * Set once the email is dead-lettered; MongoDB removes dead letters two weeks later
+     */
+    @Indexed(name = "deadAt_ttl", expireAfter = "14d")
+    private LocalDateTime deadAt;
+    
+    /**
+     * Get the domain of an email address, as stored in {@link #domain}.
+     *
+     * @param address The email address
+     * @return The part after the last '@' (the whole address if there is none), in lower case
+     */
+    public static String domainOf(String address) {
+        int at = address.lastIndexOf('@');
+        return (at >= 0 ? address.substring(at + 1) : address).toLowerCase(Locale.ROOT);
+    }
+    
+    public enum Status {
+        PENDING,
+        SENT,
+        /**
+         * Delivery failed permanently or ran out of attempts; kept without its body for inspection
+         */
+        DEAD
+    }
+}
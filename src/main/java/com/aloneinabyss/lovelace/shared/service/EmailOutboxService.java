@@ -0,0 +1,152 @@
+package com.aloneinabyss.lovelace.shared.service;
+
+import com.aloneinabyss.lovelace.shared.model.OutboxEmail;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * MongoDB-backed email outbox.
+ * Requests only insert a rendered message; {@link EmailOutboxWorker} claims and delivers it.
+ * Every state change is a single update on the message, so several instances can drain
+ * the same outbox without sending an email twice while its lease is held.
+ */
+@Service
+@RequiredArgsConstructor
+public class EmailOutboxService {
+    
+    /**
+     * Longest error message kept on a failed email
+     */
+    private static final int MAX_ERROR_LENGTH = 500;
+    
+    private final MongoTemplate mongoTemplate;
+    
+    /**
+     * Queue an email for delivery.
+     *
+     * @param to Recipient address
+     * @param subject Rendered subject
+     * @param body Rendered message text
+     * @return The queued email
+     */
+    public OutboxEmail enqueue(String to, String subject, String body) {
+        LocalDateTime now = LocalDateTime.now();
+        
+        return mongoTemplate.insert(OutboxEmail.builder()
+                .to(to)
+                .domain(OutboxEmail.domainOf(to))
+                .subject(subject)
+                .body(body)
+                .status(OutboxEmail.Status.PENDING)
+                .attempts(0)
+                .nextAttemptAt(now)
+                .createdAt(now)
+                .build());
+    }
+    
+    /**
+     * Claim the pending email that is due first, starting a new delivery attempt.
+     * Emails to the excluded domains stay in the outbox untouched.
+     *
+     * @param lease How long the email is reserved for the caller
+     * @param excludedDomains Recipient domains the caller cannot send to right now
+     * @return The claimed email, or null if no email is due
+     */
+    public OutboxEmail claimNext(Duration lease, Collection<String> excludedDomains) {
+        LocalDateTime now = LocalDateTime.now();
+        Criteria criteria = Criteria.where("status").is(OutboxEmail.Status.PENDING)
+                .and("nextAttemptAt").lte(now);
+        if (!excludedDomains.isEmpty()) {
+            criteria.and("domain").nin(excludedDomains);
+        }
+        Query query = Query.query(criteria).with(Sort.by("nextAttemptAt"));
+        Update update = new Update()
+                .set("nextAttemptAt", now.plus(lease))
+                .inc("attempts", 1);
+        
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), OutboxEmail.class);
+    }
+    
+    /**
+     * Mark an email as sent and drop its body.
+     *
+     * @param id The email id
+     */
+    public void markSent(String id) {
+        mongoTemplate.updateFirst(byId(id), new Update()
+                .set("status", OutboxEmail.Status.SENT)
+                .set("sentAt", LocalDateTime.now())
+                .unset("body")
+                .unset("lastError"), OutboxEmail.class);
+    }
+    
+    /**
+     * Schedule another attempt after a failed delivery.
+     *
+     * @param id The email id
+     * @param nextAttemptAt When the email becomes due again
+     * @param error Description of the failure
+     */
+    public void markRetry(String id, LocalDateTime nextAttemptAt, String error) {
+        mongoTemplate.updateFirst(byId(id), new Update()
+                .set("nextAttemptAt", nextAttemptAt)
+                .set("lastError", truncate(error)), OutboxEmail.class);
+    }
+    
+    /**
+     * Give an email back without counting the attempt, e.g. when its recipient domain is throttled
+     * but the email was queued before domains were recorded and could not be excluded when claiming.
+     *
+     * @param id The email id
+     * @param nextAttemptAt When the email becomes due again
+     */
+    public void defer(String id, LocalDateTime nextAttemptAt) {
+        mongoTemplate.updateFirst(byId(id), new Update()
+                .set("nextAttemptAt", nextAttemptAt)
+                .inc("attempts", -1), OutboxEmail.class);
+    }
+    
+    /**
+     * Move an email to the dead letters after a permanent failure or its last attempt.
+     * The body is dropped, since it may hold live verification or reset links, and the dead
+     * letter expires after the TTL of {@link OutboxEmail#getDeadAt()}.
+     *
+     * @param id The email id
+     * @param error Description of the last failure
+     */
+    public void markDead(String id, String error) {
+        mongoTemplate.updateFirst(byId(id), new Update()
+                .set("status", OutboxEmail.Status.DEAD)
+                .set("deadAt", LocalDateTime.now())
+                .set("lastError", truncate(error))
+                .unset("body"), OutboxEmail.class);
+    }
+    
+    /**
+     * Count the emails waiting for delivery, including those being sent.
+     *
+     * @return Number of pending emails
+     */
+    public long countPending() {
+        return mongoTemplate.count(Query.query(Criteria.where("status").is(OutboxEmail.Status.PENDING)),
+                OutboxEmail.class);
+    }
+    
+    private static Query byId(String id) {
+        return Query.query(Criteria.where("_id").is(id));
+    }
+    
+    private static String truncate(String error) {
+        return error != null && error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+    }
+}
@@ -0,0 +1,346 @@
+package com.aloneinabyss.lovelace.shared.service;
+
+import com.aloneinabyss.lovelace.config.EmailOutboxProperties;
+import com.aloneinabyss.lovelace.shared.model.OutboxEmail;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailParseException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMailMessage;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drains the email outbox with a bounded pool of worker threads.
+ * Each poll hands at most one batch of emails to every idle worker, so the pool queue never
+ * grows beyond the pool size. A batch is sent in a single send call, which a pooled mail sender
+ * delivers over one SMTP connection. Failed deliveries are retried with exponential backoff and jitter
+ * until they run out of attempts, then dead-lettered. Sends to the same recipient domain are
+ * limited to {@code domain-batch-size} per {@code domain-interval} to avoid tripping provider rate
+ * limits; those sends may share one batch, and thus one connection. Once a domain has used up its
+ * sends, its emails are left in the outbox instead of being claimed and handed back.
+ * <p>
+ * Metrics: "email.outbox.pending" (queue depth), "email.outbox.in-flight",
+ * "email.outbox.send" (SMTP time, tagged by result), "email.outbox.delivery.delay"
+ * (enqueue to delivery), "email.outbox.deferred" and "email.outbox.dead".
+ */
+@Slf4j
+@Component
+public class EmailOutboxWorker {
+    
+    private final EmailOutboxService emailOutboxService;
+    private final JavaMailSender mailSender;
+    private final EmailOutboxProperties properties;
+    private final String fromEmail;
+    private final ThreadPoolExecutor executor;
+    
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong pending = new AtomicLong();
+    
+    /**
+     * Current send window of each recipient domain
+     */
+    private final Map<String, DomainWindow> domainWindows = new ConcurrentHashMap<>();
+    
+    private final Timer sentTimer;
+    private final Timer failedTimer;
+    private final Timer deliveryDelay;
+    private final Counter deferredCounter;
+    private final Counter deadCounter;
+    
+    public EmailOutboxWorker(EmailOutboxService emailOutboxService,
+                             JavaMailSender mailSender,
+                             EmailOutboxProperties properties,
+                             MeterRegistry meterRegistry,
+                             @Value("${spring.mail.username}") String fromEmail) {
+        this.emailOutboxService = emailOutboxService;
+        this.mailSender = mailSender;
+        this.properties = properties;
+        this.fromEmail = fromEmail;
+        this.executor = new ThreadPoolExecutor(properties.getWorkers(), properties.getWorkers(),
+                0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                new CustomizableThreadFactory("email-outbox-"));
+        
+        meterRegistry.gauge("email.outbox.pending", pending);
+        meterRegistry.gauge("email.outbox.in-flight", inFlight);
+        this.sentTimer = Timer.builder("email.outbox.send").tag("result", "sent").register(meterRegistry);
+        this.failedTimer = Timer.builder("email.outbox.send").tag("result", "failed").register(meterRegistry);
+        this.deliveryDelay = meterRegistry.timer("email.outbox.delivery.delay");
+        this.deferredCounter = meterRegistry.counter("email.outbox.deferred");
+        this.deadCounter = meterRegistry.counter("email.outbox.dead");
+    }
+    
+    /**
+     * Claim due emails for the idle workers and hand them over.
+     */
+    @Scheduled(fixedDelayString = "${email.outbox.poll-interval:1000}")
+    public void poll() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        
+        try {
+            long now = System.currentTimeMillis();
+            domainWindows.values().removeIf(window -> window.endsAt <= now);
+            
+            // Domains that used up their sends are not claimed at all, so a backlog for one
+            // domain costs no writes until the domain can be sent to again
+            Set<String> throttledDomains = new HashSet<>();
+            domainWindows.forEach((domain, window) -> {
+                if (window.sent >= properties.getDomainBatchSize()) {
+                    throttledDomains.add(domain);
+                }
+            });
+            
+            boolean drained = false;
+            while (!drained && inFlight.get() < properties.getWorkers()) {
+                List<OutboxEmail> batch = new ArrayList<>(properties.getBatchSize());
+                
+                while (batch.size() < properties.getBatchSize()) {
+                    OutboxEmail email = emailOutboxService.claimNext(
+                            Duration.ofMillis(properties.getLease()), throttledDomains);
+                    if (email == null) {
+                        drained = true;
+                        break;
+                    }
+                    if (acquireDomainSlot(email, throttledDomains)) {
+                        batch.add(email);
+                    }
+                }
+                
+                if (!batch.isEmpty()) {
+                    dispatch(batch);
+                }
+            }
+            
+            pending.set(emailOutboxService.countPending());
+        } catch (Exception e) {
+            log.error("Failed to poll email outbox: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Take a send of the email's recipient domain, or give the email back until the domain's window ends.
+     * The domain is excluded from further claims once its window is used up.
+     */
+    private boolean acquireDomainSlot(OutboxEmail email, Set<String> throttledDomains) {
+        String domain = OutboxEmail.domainOf(email.getTo());
+        long waitUntil = reserveDomainSlot(domain, System.currentTimeMillis());
+        if (waitUntil != 0) {
+            throttledDomains.add(domain);
+        }
+        
+        if (waitUntil > 0) {
+            // Only emails queued without a domain can be claimed while their domain is throttled
+            deferredCounter.increment();
+            emailOutboxService.defer(email.getId(), toLocalDateTime(waitUntil));
+            return false;
+        }
+        return true;
+    }
+    
+    private void dispatch(List<OutboxEmail> batch) {
+        inFlight.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    deliver(batch);
+                } catch (Exception e) {
+                    // Outcome not recorded; the emails are attempted again once their lease ends
+                    log.error("Failed to record outcome of {} email(s): {}", batch.size(), e.getMessage());
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            });
+        } catch (RuntimeException e) {
+            // Shutting down; the leases expire and another instance picks the emails up
+            inFlight.decrementAndGet();
+            throw e;
+        }
+    }
+    
+    /**
+     * Send a batch of claimed emails in one send call, so a pooled mail sender delivers them
+     * over a single connection, and record the outcome of each.
+     */
+    void deliver(List<OutboxEmail> batch) {
+        List<OutboxEmail> emails = new ArrayList<>(batch.size());
+        List<MimeMessage> messages = new ArrayList<>(batch.size());
+        
+        for (OutboxEmail email : batch) {
+            try {
+                messages.add(toMimeMessage(email));
+                emails.add(email);
+            } catch (MailParseException e) {
+                onFailure(email, e);
+            }
+        }
+        
+        if (messages.isEmpty()) {
+            return;
+        }
+        
+        Map<Object, Exception> failedMessages = Map.of();
+        long start = System.nanoTime();
+        try {
+            mailSender.send(messages.toArray(MimeMessage[]::new));
+        } catch (MailException e) {
+            if (e instanceof MailSendException sendException && !sendException.getFailedMessages().isEmpty()) {
+                failedMessages = sendException.getFailedMessages();
+            } else {
+                // e.g. authentication failed: nothing was sent
+                Map<Object, Exception> allFailed = new IdentityHashMap<>();
+                messages.forEach(message -> allFailed.put(message, e));
+                failedMessages = allFailed;
+            }
+        }
+        long elapsedPerMessage = (System.nanoTime() - start) / messages.size();
+        
+        for (int i = 0; i < messages.size(); i++) {
+            OutboxEmail email = emails.get(i);
+            Exception failure = failedMessages.get(messages.get(i));
+            
+            if (failure != null) {
+                failedTimer.record(elapsedPerMessage, TimeUnit.NANOSECONDS);
+                onFailure(email, failure);
+                continue;
+            }
+            
+            sentTimer.record(elapsedPerMessage, TimeUnit.NANOSECONDS);
+            emailOutboxService.markSent(email.getId());
+            if (email.getCreatedAt() != null) {
+                deliveryDelay.record(Duration.between(email.getCreatedAt(), LocalDateTime.now()));
+            }
+            log.info("Email {} sent to: {}", email.getId(), email.getTo());
+        }
+    }
+    
+    private MimeMessage toMimeMessage(OutboxEmail email) {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setFrom(fromEmail);
+        message.setTo(email.getTo());
+        message.setSubject(email.getSubject());
+        message.setText(email.getBody());
+        
+        MimeMessage mimeMessage = mailSender.createMimeMessage();
+        message.copyTo(new MimeMailMessage(mimeMessage));
+        return mimeMessage;
+    }
+    
+    private void onFailure(OutboxEmail email, Exception e) {
+        if (isPermanent(e) || email.getAttempts() >= properties.getMaxAttempts()) {
+            deadCounter.increment();
+            emailOutboxService.markDead(email.getId(), e.getMessage());
+            log.error("Email {} to {} dead-lettered after {} attempt(s): {}",
+                    email.getId(), email.getTo(), email.getAttempts(), e.getMessage());
+            return;
+        }
+        
+        LocalDateTime nextAttemptAt = LocalDateTime.now().plus(backoff(email.getAttempts()));
+        emailOutboxService.markRetry(email.getId(), nextAttemptAt, e.getMessage());
+        log.warn("Failed to send email {} to {} (attempt {}), retrying at {}: {}",
+                email.getId(), email.getTo(), email.getAttempts(), nextAttemptAt, e.getMessage());
+    }
+    
+    /**
+     * A malformed message or a rejected recipient address fails the same way every time.
+     */
+    private static boolean isPermanent(Exception e) {
+        if (e instanceof MailParseException) {
+            return true;
+        }
+        return e instanceof SendFailedException sendFailed
+                && sendFailed.getInvalidAddresses() != null
+                && sendFailed.getInvalidAddresses().length > 0;
+    }
+    
+    /**
+     * Exponential backoff with jitter: between half and all of initialBackoff * 2^(attempts - 1),
+     * capped at maxBackoff.
+     */
+    Duration backoff(int attempts) {
+        int exponent = Math.min(Math.max(attempts - 1, 0), 30);
+        long delay = Math.min(properties.getMaxBackoff(), properties.getInitialBackoff() << exponent);
+        return Duration.ofMillis(delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+    }
+    
+    /**
+     * Take one of the sends a domain is allowed in its current window, opening a new window if needed.
+     *
+     * @return 0 if a send was taken and more are left, -1 if the last send was taken, otherwise
+     * the epoch millis at which the domain's next window opens
+     */
+    private long reserveDomainSlot(String domain, long now) {
+        long[] result = new long[1];
+        
+        domainWindows.compute(domain, (key, window) -> {
+            if (window == null || window.endsAt <= now) {
+                window = new DomainWindow(now + properties.getDomainInterval());
+            }
+            if (window.sent < properties.getDomainBatchSize()) {
+                window.sent++;
+                result[0] = window.sent < properties.getDomainBatchSize() ? 0 : -1;
+            } else {
+                result[0] = window.endsAt;
+            }
+            return window;
+        });
+        
+        return result[0];
+    }
+    
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+    
+    /**
+     * Sends to one recipient domain within one domain interval; only touched by the polling thread
+     */
+    private static class DomainWindow {
+        
+        private final long endsAt;
+        
+        private int sent;
+        
+        DomainWindow(long endsAt) {
+            this.endsAt = endsAt;
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("Email outbox workers did not finish in time; unfinished emails are retried after their lease");
+            executor.shutdownNow();
+        }
+    }
+}
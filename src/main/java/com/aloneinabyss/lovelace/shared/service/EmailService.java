@@ -6,115 +6,80 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.i18n.LocaleContextHolder;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import java.util.Locale;
 
+/**
+ * Renders the application emails in the request locale and queues them in the outbox.
+ * Nothing here talks to the SMTP server; {@link EmailOutboxWorker} delivers the queued emails,
+ * so requests never wait for or fail because of a slow mail server.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class EmailService {
     
-    private final JavaMailSender mailSender;
+    private final EmailOutboxService emailOutboxService;
     private final MessageService messageService;
     
-    @Value("${spring.mail.username}")
-    private String fromEmail;
-    
     @Value("${app.client.url}")
     private String clientUrl;
     
     public void sendVerificationEmail(String toEmail, String token) {
         Locale locale = LocaleContextHolder.getLocale();
-        sendVerificationEmailAsync(toEmail, token, locale);
-    }
-    
-    @Async
-    private void sendVerificationEmailAsync(String toEmail, String token, Locale locale) {
-        try {
-            String verificationUrl = clientUrl + "/verify-email?token=" + token;
-            
-            SimpleMailMessage message = new SimpleMailMessage();
-            message.setFrom(fromEmail);
-            message.setTo(toEmail);
-            message.setSubject(messageService.getMessage("email.verification.subject", locale));
-            message.setText(messageService.getMessage("email.verification.body", locale, verificationUrl));
-            
-            mailSender.send(message);
-            log.info("Verification email sent to: {}", toEmail);
-        } catch (Exception e) {
-            log.error("Failed to send verification email to: {}", toEmail, e);
-            throw new InternalServerException(ErrorCode.EMAIL_SEND_FAILED, e);
-        }
+        String verificationUrl = clientUrl + "/verify-email?token=" + token;
+        
+        enqueue(toEmail,
+                messageService.getMessage("email.verification.subject", locale),
+                messageService.getMessage("email.verification.body", locale, verificationUrl),
+                true);
     }
     
     public void sendWelcomeEmail(String toEmail, String username) {
         Locale locale = LocaleContextHolder.getLocale();
-        sendWelcomeEmailAsync(toEmail, username, locale);
-    }
-    
-    @Async
-    private void sendWelcomeEmailAsync(String toEmail, String username, Locale locale) {
-        try {
-            SimpleMailMessage message = new SimpleMailMessage();
-            message.setFrom(fromEmail);
-            message.setTo(toEmail);
-            message.setSubject(messageService.getMessage("email.welcome.subject", locale));
-            message.setText(messageService.getMessage("email.welcome.body", locale, username));
-            
-            mailSender.send(message);
-            log.info("Welcome email sent to: {}", toEmail);
-        } catch (Exception e) {
-            log.error("Failed to send welcome email to: {}", toEmail, e);
-        }
+        
+        enqueue(toEmail,
+                messageService.getMessage("email.welcome.subject", locale),
+                messageService.getMessage("email.welcome.body", locale, username),
+                false);
     }
     
     public void sendPasswordResetEmail(String toEmail, String token) {
         Locale locale = LocaleContextHolder.getLocale();
-        sendPasswordResetEmailAsync(toEmail, token, locale);
-    }
-    
-    @Async
-    private void sendPasswordResetEmailAsync(String toEmail, String token, Locale locale) {
-        try {
-            String resetUrl = clientUrl + "/reset-password?token=" + token;
-            
-            SimpleMailMessage message = new SimpleMailMessage();
-            message.setFrom(fromEmail);
-            message.setTo(toEmail);
-            message.setSubject(messageService.getMessage("email.password.reset.subject", locale));
-            message.setText(messageService.getMessage("email.password.reset.body", locale, resetUrl));
-            
-            mailSender.send(message);
-            log.info("Password reset email sent to: {}", toEmail);
-        } catch (Exception e) {
-            log.error("Failed to send password reset email to: {}", toEmail, e);
-            throw new InternalServerException(ErrorCode.EMAIL_SEND_FAILED, e);
-        }
+        String resetUrl = clientUrl + "/reset-password?token=" + token;
+        
+        enqueue(toEmail,
+                messageService.getMessage("email.password.reset.subject", locale),
+                messageService.getMessage("email.password.reset.body", locale, resetUrl),
+                true);
     }
     
     public void sendPasswordChangedEmail(String toEmail, String username) {
         Locale locale = LocaleContextHolder.getLocale();
-        sendPasswordChangedEmailAsync(toEmail, username, locale);
+        
+        enqueue(toEmail,
+                messageService.getMessage("email.password.changed.subject", locale),
+                messageService.getMessage("email.password.changed.body", locale, username),
+                false);
     }
     
-    @Async
-    private void sendPasswordChangedEmailAsync(String toEmail, String username, Locale locale) {
+    /**
+     * Queue an email for delivery.
+     *
+     * @param required Whether the request must fail if the email cannot be queued,
+     *                 i.e. the user cannot proceed without it
+     */
+    private void enqueue(String toEmail, String subject, String body, boolean required) {
         try {
-            SimpleMailMessage message = new SimpleMailMessage();
-            message.setFrom(fromEmail);
-            message.setTo(toEmail);
-            message.setSubject(messageService.getMessage("email.password.changed.subject", locale));
-            message.setText(messageService.getMessage("email.password.changed.body", locale, username));
-            
-            mailSender.send(message);
-            log.info("Password changed notification email sent to: {}", toEmail);
+            emailOutboxService.enqueue(toEmail, subject, body);
+            log.info("Email \"{}\" queued for: {}", subject, toEmail);
         } catch (Exception e) {
-            log.error("Failed to send password changed email to: {}", toEmail, e);
+            log.error("Failed to queue email \"{}\" for: {}", subject, toEmail, e);
+            if (required) {
+                throw new InternalServerException(ErrorCode.EMAIL_SEND_FAILED, e);
+            }
         }
     }
-    
+
 }
@@ -0,0 +1,230 @@
+package com.aloneinabyss.lovelace.shared.service;
+
+import com.aloneinabyss.lovelace.config.SmtpPoolProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.mail.Address;
+import jakarta.mail.AuthenticationFailedException;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.lang.Nullable;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+
+/**
+ * JavaMailSender that keeps authenticated SMTP connections open and reuses them.
+ * The plain JavaMailSenderImpl connects, runs STARTTLS and authenticates for every send call;
+ * here a send call borrows an idle connection and sends all of its messages over it.
+ * <p>
+ * Connections are closed once they have been idle for longer than the idle timeout or have
+ * sent the per-connection message cap. Connections are not probed before use; when a reused
+ * connection fails, the message is retried once on a fresh connection.
+ * Metrics: "email.smtp.connections.created", "email.smtp.connections.idle" and
+ * "email.smtp.connections.active".
+ */
+@Slf4j
+public class PooledJavaMailSender extends JavaMailSenderImpl implements DisposableBean {
+    
+    private final SmtpPoolProperties properties;
+    private final BlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final Counter connectionsCreated;
+    
+    public PooledJavaMailSender(SmtpPoolProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.permits = new Semaphore(properties.getMaxConnections(), true);
+        this.connectionsCreated = meterRegistry.counter("email.smtp.connections.created");
+        
+        meterRegistry.gauge("email.smtp.connections.idle", idleConnections, BlockingDeque::size);
+        meterRegistry.gauge("email.smtp.connections.active", permits,
+                semaphore -> properties.getMaxConnections() - semaphore.availablePermits());
+    }
+    
+    /**
+     * Send the messages over one pooled connection, replacing it when it reaches its message cap.
+     * Mirrors the error reporting of JavaMailSenderImpl: failures are collected per message and
+     * reported together in a MailSendException.
+     */
+    @Override
+    protected void doSend(MimeMessage[] mimeMessages, @Nullable Object[] originalMessages) throws MailException {
+        Map<Object, Exception> failedMessages = new LinkedHashMap<>();
+        PooledConnection connection = null;
+        
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MailSendException("Interrupted while waiting for an SMTP connection", e);
+        }
+        
+        try {
+            for (int i = 0; i < mimeMessages.length; i++) {
+                Object original = originalMessages != null ? originalMessages[i] : mimeMessages[i];
+                
+                if (connection != null && connection.sent >= properties.getMaxMessagesPerConnection()) {
+                    close(connection);
+                    connection = null;
+                }
+                
+                if (connection == null) {
+                    try {
+                        connection = borrow();
+                    } catch (AuthenticationFailedException e) {
+                        throw new MailAuthenticationException(e);
+                    } catch (Exception e) {
+                        // Cannot reach the server: none of the remaining messages can be sent
+                        for (int j = i; j < mimeMessages.length; j++) {
+                            failedMessages.put(originalMessages != null ? originalMessages[j] : mimeMessages[j], e);
+                        }
+                        throw new MailSendException("Mail server connection failed", e, failedMessages);
+                    }
+                }
+                
+                try {
+                    send(connection, mimeMessages[i]);
+                } catch (MessagingException e) {
+                    // Rejected by the server, e.g. an invalid recipient; the connection is still usable.
+                    // A dropped connection also surfaces as SendFailedException, but leaves the transport closed
+                    if (e instanceof SendFailedException && connection.transport.isConnected()) {
+                        failedMessages.put(original, e);
+                        continue;
+                    }
+                    
+                    boolean reused = connection.sent > 0 || connection.borrowedFromPool;
+                    close(connection);
+                    connection = null;
+                    
+                    if (!reused) {
+                        failedMessages.put(original, e);
+                        continue;
+                    }
+                    
+                    // The server probably closed the idle connection; retry once on a new one
+                    try {
+                        connection = connect();
+                        send(connection, mimeMessages[i]);
+                    } catch (MessagingException retryException) {
+                        failedMessages.put(original, retryException);
+                        if (connection != null) {
+                            close(connection);
+                            connection = null;
+                        }
+                    }
+                }
+            }
+        } finally {
+            if (connection != null) {
+                release(connection);
+            }
+            permits.release();
+        }
+        
+        if (!failedMessages.isEmpty()) {
+            throw new MailSendException(failedMessages);
+        }
+    }
+    
+    /**
+     * Close idle connections that exceeded the idle timeout.
+     * Expired connections are also skipped on borrow; this releases them on the server sooner.
+     */
+    @Scheduled(fixedDelayString = "${email.smtp-pool.idle-timeout:30000}")
+    public void evictIdleConnections() {
+        long now = System.currentTimeMillis();
+        idleConnections.removeIf(connection -> {
+            if (now - connection.lastUsed > properties.getIdleTimeout()) {
+                close(connection);
+                return true;
+            }
+            return false;
+        });
+    }
+    
+    @Override
+    public void destroy() {
+        PooledConnection connection;
+        while ((connection = idleConnections.pollFirst()) != null) {
+            close(connection);
+        }
+    }
+    
+    private PooledConnection borrow() throws MessagingException {
+        long now = System.currentTimeMillis();
+        PooledConnection connection;
+        
+        // Most recently used first: it is the least likely to have been closed by the server
+        while ((connection = idleConnections.pollFirst()) != null) {
+            if (now - connection.lastUsed <= properties.getIdleTimeout()) {
+                connection.borrowedFromPool = true;
+                return connection;
+            }
+            close(connection);
+        }
+        
+        return connect();
+    }
+    
+    private PooledConnection connect() throws MessagingException {
+        Transport transport = connectTransport();
+        connectionsCreated.increment();
+        log.debug("Opened SMTP connection to {}:{}", getHost(), getPort());
+        return new PooledConnection(transport);
+    }
+    
+    private void release(PooledConnection connection) {
+        connection.lastUsed = System.currentTimeMillis();
+        connection.borrowedFromPool = false;
+        idleConnections.offerFirst(connection);
+    }
+    
+    private static void send(PooledConnection connection, MimeMessage mimeMessage) throws MessagingException {
+        // Same preparation as JavaMailSenderImpl
+        if (mimeMessage.getSentDate() == null) {
+            mimeMessage.setSentDate(new Date());
+        }
+        String messageId = mimeMessage.getMessageID();
+        mimeMessage.saveChanges();
+        if (messageId != null) {
+            mimeMessage.setHeader("Message-ID", messageId);
+        }
+        
+        Address[] addresses = mimeMessage.getAllRecipients();
+        connection.transport.sendMessage(mimeMessage, addresses != null ? addresses : new Address[0]);
+        connection.sent++;
+    }
+    
+    private static void close(PooledConnection connection) {
+        try {
+            connection.transport.close();
+        } catch (MessagingException e) {
+            log.debug("Failed to close SMTP connection: {}", e.getMessage());
+        }
+    }
+    
+    private static final class PooledConnection {
+        
+        private final Transport transport;
+        private int sent;
+        private long lastUsed;
+        private boolean borrowedFromPool;
+        
+        private PooledConnection(Transport transport) {
+            this.transport = transport;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+}
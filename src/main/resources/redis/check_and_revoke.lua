@@ -0,0 +1,35 @@
+-- Use a refresh token exactly once: revoke it if it is still valid, in one atomic step.
+-- KEYS[1]  expiry bucket set of the token
+-- KEYS[2]  family key of the token's session ("blacklist:family:<sid>")
+-- KEYS[3]  legacy blacklist key of the token, checked only when ARGV[4] is "1"
+-- KEYS[4]  grace key holding the result of the token's rotation ("blacklist:grace:<id>")
+-- ARGV[1]  revocation id of the token
+-- ARGV[2]  bucket expiry (epoch seconds)
+-- ARGV[3]  time in milliseconds a family revocation lasts, or "0" if the token has no session
+-- ARGV[4]  "1" if the token predates token ids and may be blacklisted under the legacy key
+-- ARGV[5]  grace window in milliseconds, or "0" to disable it
+-- Returns 1 if the token was valid and is now revoked, 2 if it was rotated within the grace
+-- window, 0 if it had already been used (the whole family is then revoked, since one of its
+-- tokens leaked), -1 if its family was revoked.
+if ARGV[3] ~= '0' and redis.call('EXISTS', KEYS[2]) == 1 then
+    return -1
+end
+
+if redis.call('SISMEMBER', KEYS[1], ARGV[1]) == 1
+        or (ARGV[4] == '1' and redis.call('EXISTS', KEYS[3]) == 1) then
+    if ARGV[5] ~= '0' and redis.call('EXISTS', KEYS[4]) == 1 then
+        return 2
+    end
+    if ARGV[3] ~= '0' then
+        redis.call('SET', KEYS[2], '1', 'PX', ARGV[3])
+    end
+    return 0
+end
+
+redis.call('SADD', KEYS[1], ARGV[1])
+redis.call('EXPIREAT', KEYS[1], ARGV[2])
+if ARGV[5] ~= '0' then
+    -- Empty until the caller stores the rotated tokens
+    redis.call('SET', KEYS[4], '', 'PX', ARGV[5])
+end
+return 1
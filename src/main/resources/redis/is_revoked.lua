@@ -0,0 +1,16 @@
+-- Check a token against its expiry bucket, its session family and the legacy key in one round trip.
+-- KEYS[1]  expiry bucket set of the token
+-- KEYS[2]  family key of the token's session, checked only when ARGV[2] is "1"
+-- KEYS[3]  legacy blacklist key of the token, checked only when ARGV[3] is "1"
+-- ARGV[1]  revocation id of the token
+-- Returns 1 if the token is revoked, 0 otherwise.
+if redis.call('SISMEMBER', KEYS[1], ARGV[1]) == 1 then
+    return 1
+end
+if ARGV[2] == '1' and redis.call('EXISTS', KEYS[2]) == 1 then
+    return 1
+end
+if ARGV[3] == '1' and redis.call('EXISTS', KEYS[3]) == 1 then
+    return 1
+end
+return 0
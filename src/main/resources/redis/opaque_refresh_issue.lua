@@ -0,0 +1,7 @@
+-- Store a new opaque refresh token with its session metadata.
+-- KEYS[1]  token key ("refresh:opaque:<digest>")
+-- ARGV[1]  expiration (epoch milliseconds)
+-- ARGV[2..n]  field and value pairs of the token
+redis.call('HSET', KEYS[1], unpack(ARGV, 2))
+redis.call('PEXPIREAT', KEYS[1], ARGV[1])
+return 1
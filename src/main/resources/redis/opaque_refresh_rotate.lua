@@ -0,0 +1,47 @@
+-- Look up an opaque refresh token and rotate it into a new one, in one atomic step.
+-- The used token is kept as a tombstone until it would have expired, so that reuse is recognised.
+-- KEYS[1]  key of the presented token ("refresh:opaque:<digest>")
+-- KEYS[2]  key of the new token
+-- KEYS[3]  grace key of the presented token ("blacklist:grace:<digest>")
+-- ARGV[1]  family key prefix ("blacklist:family:"); the family key is derived from the stored session
+--          id, so this script assumes a single Redis node or primary
+-- ARGV[2]  current time (epoch milliseconds), the issue time of the new token
+-- ARGV[3]  expiration of the new token (epoch milliseconds)
+-- ARGV[4]  grace window in milliseconds, or "0" to disable it
+-- ARGV[5]  time in milliseconds a family revocation lasts
+-- Returns {-2} if the token is unknown or expired, otherwise {status, userId, username, roles, sid,
+-- cv, iat, exp} of the presented token, with the status codes of check_and_revoke.lua: 1 if the
+-- token was rotated, 2 if it was rotated within the grace window, 0 if it had already been used
+-- (the whole family is then revoked), -1 if its family was revoked.
+local token = redis.call('HMGET', KEYS[1], 'userId', 'username', 'roles', 'sid', 'cv', 'iat', 'exp', 'rotatedAt')
+if not token[1] then
+    return {-2}
+end
+
+local result = {1, token[1], token[2], token[3], token[4], token[5], token[6], token[7]}
+local family = ARGV[1] .. token[4]
+
+if redis.call('EXISTS', family) == 1 then
+    result[1] = -1
+    return result
+end
+
+if token[8] then
+    if ARGV[4] ~= '0' and redis.call('EXISTS', KEYS[3]) == 1 then
+        result[1] = 2
+    else
+        redis.call('SET', family, '1', 'PX', ARGV[5])
+        result[1] = 0
+    end
+    return result
+end
+
+redis.call('HSET', KEYS[2], 'userId', token[1], 'username', token[2], 'roles', token[3], 'sid', token[4],
+        'cv', token[5], 'iat', ARGV[2], 'exp', ARGV[3])
+redis.call('PEXPIREAT', KEYS[2], ARGV[3])
+redis.call('HSET', KEYS[1], 'rotatedAt', ARGV[2])
+if ARGV[4] ~= '0' then
+    -- Empty until the caller stores the rotated tokens
+    redis.call('SET', KEYS[3], '', 'PX', ARGV[4])
+end
+return result
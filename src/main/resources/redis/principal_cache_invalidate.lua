@@ -0,0 +1,10 @@
+-- Drop cached principals and move their generations on, so that loads started before the
+-- invalidation cannot write their result back.
+-- KEYS     pairs of cached principal key and generation key
+-- ARGV[1]  time in milliseconds a generation is kept
+for i = 1, #KEYS, 2 do
+    redis.call('DEL', KEYS[i])
+    redis.call('INCR', KEYS[i + 1])
+    redis.call('PEXPIRE', KEYS[i + 1], ARGV[1])
+end
+return 1
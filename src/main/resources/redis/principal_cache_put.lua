@@ -0,0 +1,14 @@
+-- Cache a principal loaded from the database, unless it was invalidated while loading.
+-- KEYS[1]  cached principal ("principal:<id|username key>")
+-- KEYS[2]  invalidation generation of the same key ("principal:gen:<id|username key>")
+-- ARGV[1]  serialized principal
+-- ARGV[2]  time in milliseconds the principal stays cached
+-- ARGV[3]  generation read before loading ('' if there was none)
+-- Returns 1 if the principal was cached, 0 if the generation moved on and it may be stale.
+local generation = redis.call('GET', KEYS[2]) or ''
+if generation ~= ARGV[3] then
+    return 0
+end
+
+redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2])
+return 1
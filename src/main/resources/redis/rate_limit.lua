@@ -0,0 +1,53 @@
+-- Take one token from every bucket of a request, or from none if any bucket is empty.
+-- Buckets are hashes of {tokens, ts} refilled continuously; a bucket left alone for a whole
+-- refill period is full again, so its key expires and a missing key reads as a full bucket.
+-- KEYS[i]     bucket of the request (e.g. per client IP, per identity)
+-- ARGV[2i-1]  capacity of KEYS[i]
+-- ARGV[2i]    time in milliseconds for KEYS[i] to refill from empty
+-- Returns {allowed (1 or 0), index of the bucket with the fewest tokens left, tokens left in it,
+-- milliseconds until it is full again, then for every bucket the milliseconds until it holds a token}.
+-- The server clock is used so that every application instance sees the same time.
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local levels = {}
+local waits = {}
+local allowed = 1
+
+for i = 1, #KEYS do
+    local capacity = tonumber(ARGV[2 * i - 1])
+    local rate = capacity / tonumber(ARGV[2 * i])
+    local state = redis.call('HMGET', KEYS[i], 'tokens', 'ts')
+    local level = capacity
+
+    if state[1] then
+        level = math.min(capacity, tonumber(state[1]) + math.max(0, now - tonumber(state[2])) * rate)
+    end
+
+    levels[i] = level
+    waits[i] = 0
+    if level < 1 then
+        allowed = 0
+        waits[i] = math.ceil((1 - level) / rate)
+    end
+end
+
+local lowest = 1
+for i = 1, #KEYS do
+    if allowed == 1 then
+        levels[i] = levels[i] - 1
+    end
+    redis.call('HSET', KEYS[i], 'tokens', levels[i], 'ts', now)
+    redis.call('PEXPIRE', KEYS[i], ARGV[2 * i])
+    if levels[i] < levels[lowest] then
+        lowest = i
+    end
+end
+
+local capacity = tonumber(ARGV[2 * lowest - 1])
+local result = {allowed, lowest, math.floor(levels[lowest]),
+                math.ceil((capacity - levels[lowest]) * tonumber(ARGV[2 * lowest]) / capacity)}
+for i = 1, #KEYS do
+    result[4 + i] = waits[i]
+end
+return result
@@ -0,0 +1,19 @@
+-- Revoke any number of tokens, and optionally their whole session family, atomically.
+-- KEYS[1]    family key ("blacklist:family:<sid>"), ignored when ARGV[1] is "0"
+-- KEYS[2]    session registry of the user ("sessions:user:<userId>"), ignored when ARGV[1] is "0"
+-- KEYS[3..n] expiry bucket set of each token
+-- ARGV[1]    time in milliseconds the family revocation lasts, or "0" to leave the family alone
+-- ARGV[2]    session id to remove from the registry
+-- ARGV[2i-3], ARGV[2i-2]  revocation id and bucket expiry (epoch seconds) of the token in KEYS[i]
+-- Returns the number of token ids that were not revoked yet.
+if ARGV[1] ~= '0' then
+    redis.call('SET', KEYS[1], '1', 'PX', ARGV[1])
+    redis.call('ZREM', KEYS[2], ARGV[2])
+end
+
+local added = 0
+for i = 3, #KEYS do
+    added = added + redis.call('SADD', KEYS[i], ARGV[2 * i - 3])
+    redis.call('EXPIREAT', KEYS[i], ARGV[2 * i - 2])
+end
+return added
@@ -0,0 +1,37 @@
+-- Register or extend a session in a user's session registry, evicting the oldest sessions over the cap.
+-- KEYS[1]  session registry of the user ("sessions:user:<userId>"), a sorted set of session ids scored by expiry
+-- ARGV[1]  session id
+-- ARGV[2]  expiry of the session (epoch milliseconds)
+-- ARGV[3]  current time (epoch milliseconds)
+-- ARGV[4]  maximum number of sessions, or "0" for no limit
+-- ARGV[5]  "XX" to only extend a registered session, "" to add it if missing
+-- ARGV[6]  family key prefix ("blacklist:family:"); the family keys of evicted sessions are derived
+--          from their ids, so this script assumes a single Redis node or primary
+-- ARGV[7]  time in milliseconds a family revocation lasts
+-- Returns the ids of the evicted sessions, whose families are now revoked.
+redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', ARGV[3])
+
+if ARGV[5] == 'XX' then
+    redis.call('ZADD', KEYS[1], 'XX', ARGV[2], ARGV[1])
+else
+    redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1])
+end
+
+local evicted = {}
+local limit = tonumber(ARGV[4])
+local count = redis.call('ZCARD', KEYS[1])
+
+if limit > 0 and count > limit then
+    -- The lowest score is the session refreshed least recently
+    evicted = redis.call('ZRANGE', KEYS[1], 0, count - limit - 1)
+    for _, sessionId in ipairs(evicted) do
+        redis.call('SET', ARGV[6] .. sessionId, '1', 'PX', ARGV[7])
+    end
+    redis.call('ZREM', KEYS[1], unpack(evicted))
+end
+
+local last = redis.call('ZRANGE', KEYS[1], -1, -1, 'WITHSCORES')
+if last[2] then
+    redis.call('PEXPIREAT', KEYS[1], last[2])
+end
+return evicted
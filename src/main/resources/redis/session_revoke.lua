@@ -0,0 +1,12 @@
+-- Revoke one session of a user: remove it from the registry and revoke its token family.
+-- KEYS[1]  session registry of the user ("sessions:user:<userId>")
+-- KEYS[2]  family key of the session ("blacklist:family:<sid>")
+-- ARGV[1]  session id
+-- ARGV[2]  time in milliseconds the family revocation lasts
+-- Returns 1 if the session was registered to the user and is now revoked, 0 otherwise.
+if redis.call('ZREM', KEYS[1], ARGV[1]) == 0 then
+    return 0
+end
+
+redis.call('SET', KEYS[2], '1', 'PX', ARGV[2])
+return 1
@@ -0,0 +1,138 @@
+package com.aloneinabyss.lovelace.auth.repository;
+
+import com.aloneinabyss.lovelace.auth.model.User;
+import com.mongodb.MongoClientSettings;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Verifies that the hand-written codecs read and write the same document shape as the
+ * MappingMongoConverter that Spring Data uses for the rest of the application.
+ */
+class UserCodecTest {
+    
+    private final UserCodec userCodec = new UserCodec();
+    private final UserAuthViewCodec userAuthViewCodec = new UserAuthViewCodec();
+    
+    private MappingMongoConverter converter;
+    private User user;
+    
+    @BeforeEach
+    void setUp() {
+        MongoCustomConversions conversions = new MongoCustomConversions(Collections.emptyList());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        
+        // BSON dates have millisecond precision
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        user = User.builder()
+                .id("64b7f0c2e4b0a1a2b3c4d5e6")
+                .username("ada")
+                .email("ada@example.com")
+                .emailVerified(true)
+                .password("{bcrypt}$2a$10$abcdefghijklmnopqrstuv")
+                .passwordChangedAt(now.minusDays(3))
+                .credentialVersion(4)
+                .roles(Set.of("ROLE_USER", "ROLE_ADMIN"))
+                .enabled(true)
+                .createdAt(now.minusDays(30))
+                .updatedAt(now)
+                .build();
+    }
+    
+    @Test
+    void encodesSameDocumentAsMappingConverter() {
+        assertThat(encodeWithCodec(user)).isEqualTo(encodeWithConverter(user));
+    }
+    
+    @Test
+    void omitsNullFieldsLikeMappingConverter() {
+        user.setPasswordChangedAt(null);
+        user.setUpdatedAt(null);
+        
+        assertThat(encodeWithCodec(user)).isEqualTo(encodeWithConverter(user));
+    }
+    
+    @Test
+    void decodesDocumentWrittenByMappingConverter() {
+        BsonDocument document = encodeWithConverter(user);
+        
+        assertThat(userCodec.decode(new BsonDocumentReader(document), DecoderContext.builder().build()))
+                .isEqualTo(user);
+    }
+    
+    @Test
+    void mappingConverterReadsDocumentWrittenByCodec() {
+        Document document = new DocumentCodec().decode(
+                new BsonDocumentReader(encodeWithCodec(user)), DecoderContext.builder().build());
+        
+        assertThat(converter.read(User.class, document)).isEqualTo(user);
+    }
+    
+    @Test
+    void decodesLegacyAndUnknownFields() {
+        BsonDocument document = encodeWithConverter(user);
+        document.remove("credentialVersion");
+        document.put("passwordResetToken", new BsonString("moved-to-one-time-tokens"));
+        
+        User decoded = userCodec.decode(new BsonDocumentReader(document), DecoderContext.builder().build());
+        
+        assertThat(decoded.getCredentialVersion()).isZero();
+        assertThat(decoded.getUsername()).isEqualTo(user.getUsername());
+        
+        document.put("credentialVersion", new BsonInt32(2));
+        assertThat(userCodec.decode(new BsonDocumentReader(document), DecoderContext.builder().build())
+                .getCredentialVersion()).isEqualTo(2);
+    }
+    
+    @Test
+    void decodesAuthViewFromUserDocument() {
+        UserAuthView view = userAuthViewCodec.decode(
+                new BsonDocumentReader(encodeWithConverter(user)), DecoderContext.builder().build());
+        
+        assertThat(view.getId()).isEqualTo(user.getId());
+        assertThat(view.getUsername()).isEqualTo(user.getUsername());
+        assertThat(view.getEmail()).isEqualTo(user.getEmail());
+        assertThat(view.getRoles()).isEqualTo(user.getRoles());
+        assertThat(view.isEnabled()).isTrue();
+        assertThat(view.getPasswordChangedAt()).isEqualTo(user.getPasswordChangedAt());
+        assertThat(view.getCredentialVersion()).isEqualTo(user.getCredentialVersion());
+    }
+    
+    private BsonDocument encodeWithCodec(User value) {
+        BsonDocument document = new BsonDocument();
+        userCodec.encode(new BsonDocumentWriter(document), value, EncoderContext.builder().build());
+        return document;
+    }
+    
+    private BsonDocument encodeWithConverter(User value) {
+        Document document = new Document();
+        converter.write(value, document);
+        return document.toBsonDocument(Document.class, MongoClientSettings.getDefaultCodecRegistry());
+    }
+}
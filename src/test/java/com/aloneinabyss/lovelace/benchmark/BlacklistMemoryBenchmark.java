@@ -0,0 +1,99 @@
+package com.aloneinabyss.lovelace.benchmark;
+
+import com.aloneinabyss.lovelace.security.TokenHashing;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.function.BiConsumer;
+
+/**
+ * Reports the Redis memory used per blacklisted token for the previous storage format
+ * (one key per full JWT) and the current one (token ids in expiry-bucketed sets).
+ * <p>
+ * Run with {@code mvn -Pbenchmark test-compile exec:java -Dbenchmark=BlacklistMemoryBenchmark} (requires Docker).
+ */
+public class BlacklistMemoryBenchmark {
+    
+    private static final int ENTRIES = 200_000;
+    private static final int BATCH_SIZE = 10_000;
+    
+    /**
+     * Typical length of an access/refresh token issued by this API
+     */
+    private static final int TOKEN_LENGTH = 330;
+    
+    private static final long HOUR_SECONDS = 3600;
+    private static final int REFRESH_LIFETIME_HOURS = 7 * 24;
+    
+    public static void main(String[] args) {
+        try (GenericContainer<?> redis = new GenericContainer<>(DockerImageName.parse("redis:latest"))
+                .withExposedPorts(6379)) {
+            redis.start();
+            
+            LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(
+                    new RedisStandaloneConfiguration(redis.getHost(), redis.getMappedPort(6379)));
+            connectionFactory.afterPropertiesSet();
+            StringRedisTemplate redisTemplate = new StringRedisTemplate(connectionFactory);
+            
+            long nowSeconds = System.currentTimeMillis() / 1000;
+            
+            double legacy = measure(redisTemplate, (connection, index) -> {
+                String token = TokenHashing.randomId(TOKEN_LENGTH * 3 / 4);
+                connection.stringCommands().pSetEx(
+                        bytes("blacklist:token:" + token), HOUR_SECONDS * 1000 * (1 + index % REFRESH_LIFETIME_HOURS),
+                        bytes("blacklisted"));
+            });
+            
+            double bucketed = measure(redisTemplate, (connection, index) -> {
+                long bucket = nowSeconds / HOUR_SECONDS + index % REFRESH_LIFETIME_HOURS;
+                byte[] key = bytes("blacklist:jti:" + bucket);
+                connection.setCommands().sAdd(key, bytes(TokenHashing.randomId(12)));
+                connection.keyCommands().expireAt(key, (bucket + 1) * HOUR_SECONDS);
+            });
+            
+            System.out.printf("Blacklisted tokens:        %d%n", ENTRIES);
+            System.out.printf("Key per JWT (before):      %.1f bytes/entry%n", legacy);
+            System.out.printf("Bucketed jti sets (after): %.1f bytes/entry%n", bucketed);
+            System.out.printf("Reduction:                 %.1fx%n", legacy / bucketed);
+            
+            connectionFactory.destroy();
+        }
+    }
+    
+    private static double measure(StringRedisTemplate redisTemplate, BiConsumer<RedisConnection, Integer> writer) {
+        redisTemplate.execute((RedisCallback<Void>) connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        });
+        long before = usedMemory(redisTemplate);
+        
+        for (int batchStart = 0; batchStart < ENTRIES; batchStart += BATCH_SIZE) {
+            int start = batchStart;
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (int index = start; index < start + BATCH_SIZE; index++) {
+                    writer.accept(connection, index);
+                }
+                return null;
+            });
+        }
+        
+        return (double) (usedMemory(redisTemplate) - before) / ENTRIES;
+    }
+    
+    private static long usedMemory(StringRedisTemplate redisTemplate) {
+        Properties info = redisTemplate.execute((RedisCallback<Properties>) connection ->
+                connection.serverCommands().info("memory"));
+        return Long.parseLong(info.getProperty("used_memory"));
+    }
+    
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
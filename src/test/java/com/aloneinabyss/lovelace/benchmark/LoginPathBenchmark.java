@@ -0,0 +1,116 @@
+package com.aloneinabyss.lovelace.benchmark;
+
+import com.aloneinabyss.lovelace.auth.model.User;
+import com.aloneinabyss.lovelace.security.UserPrincipal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the CPU cost of the previous login path (password check followed by
+ * AuthenticationManager, i.e. a second user lookup and a second BCrypt verification)
+ * with the current one (a single lookup and a single verification).
+ * User lookups are served from memory so that only the password hashing is measured.
+ * <p>
+ * Run with {@code mvn -Pbenchmark test-compile exec:java -Dbenchmark=LoginPathBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoginPathBenchmark {
+    
+    private static final String USERNAME = "benchmark";
+    private static final String PASSWORD = "correct horse battery staple";
+    
+    private PasswordEncoder passwordEncoder;
+    private Map<String, User> usersByUsername;
+    private Map<String, User> usersByEmail;
+    private DaoAuthenticationProvider authenticationProvider;
+    
+    @Setup
+    public void setUp() {
+        passwordEncoder = new BCryptPasswordEncoder();
+        
+        User user = User.builder()
+                .id("64b7f0c2e4b0a1a2b3c4d5e6")
+                .username(USERNAME)
+                .email("benchmark@example.com")
+                .password(passwordEncoder.encode(PASSWORD))
+                .roles(Set.of("ROLE_USER"))
+                .enabled(true)
+                .emailVerified(true)
+                .passwordChangedAt(LocalDateTime.now())
+                .build();
+        
+        usersByUsername = Map.of(user.getUsername(), user);
+        usersByEmail = Map.of(user.getEmail(), user);
+        
+        authenticationProvider = new DaoAuthenticationProvider(username -> Optional.ofNullable(usersByUsername.get(username))
+                .map(UserPrincipal::build)
+                .orElseThrow(() -> new UsernameNotFoundException(username)));
+        authenticationProvider.setPasswordEncoder(passwordEncoder);
+    }
+    
+    /**
+     * findByUsername, findByEmail, matches, then AuthenticationManager (load + matches again)
+     */
+    @Benchmark
+    public Object previousLoginPath() {
+        User user = Optional.ofNullable(usersByUsername.get(USERNAME))
+                .or(() -> Optional.ofNullable(usersByEmail.get(USERNAME)))
+                .orElseThrow();
+        
+        if (!passwordEncoder.matches(PASSWORD, user.getPassword())) {
+            throw new IllegalStateException("Invalid credentials");
+        }
+        
+        Authentication authentication = authenticationProvider.authenticate(
+                new UsernamePasswordAuthenticationToken(user.getUsername(), PASSWORD));
+        return authentication.getPrincipal();
+    }
+    
+    /**
+     * Single $or lookup, one matches, principal built from the loaded user
+     */
+    @Benchmark
+    public Object singleVerificationLoginPath() {
+        User user = usersByUsername.get(USERNAME);
+        
+        if (!passwordEncoder.matches(PASSWORD, user.getPassword())) {
+            throw new IllegalStateException("Invalid credentials");
+        }
+        
+        return UserPrincipal.build(user);
+    }
+    
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(LoginPathBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,254 @@
+package com.aloneinabyss.lovelace.benchmark;
+
+import com.aloneinabyss.lovelace.config.EmailOutboxProperties;
+import com.aloneinabyss.lovelace.config.SmtpPoolProperties;
+import com.aloneinabyss.lovelace.shared.model.OutboxEmail;
+import com.aloneinabyss.lovelace.shared.service.EmailOutboxService;
+import com.aloneinabyss.lovelace.shared.service.EmailOutboxWorker;
+import com.aloneinabyss.lovelace.shared.service.PooledJavaMailSender;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetup;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Compares email throughput of a new SMTP connection per message (the plain JavaMailSenderImpl)
+ * against the pooled sender, one message per send call and in outbox-sized batches.
+ * Runs against an in-process GreenMail server over plain SMTP and over implicit TLS (SMTPS),
+ * where every new connection pays a TLS handshake like STARTTLS does in production.
+ * Scores are messages per second.
+ * <p>
+ * {@code outboxWorkerOneDomain} drains an in-memory outbox of emails to a single recipient
+ * domain through {@link EmailOutboxWorker}, so the per-domain throttle decides how many emails
+ * share a batch, and thus a connection, like a backlog for one provider does in production.
+ * <p>
+ * Run with {@code mvn -Pbenchmark test-compile exec:java -Dbenchmark=SmtpThroughputBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SmtpThroughputBenchmark {
+    
+    private static final int MESSAGES = 20;
+    private static final int PORT = 3925;
+    
+    /**
+     * Domain interval of the outbox worker benchmark, short enough that throttled runs finish quickly
+     */
+    private static final long DOMAIN_INTERVAL = 50;
+    
+    @Param({"smtp", "smtps"})
+    public String protocol;
+    
+    private GreenMail greenMail;
+    private JavaMailSenderImpl perMessageSender;
+    private PooledJavaMailSender pooledSender;
+    private SimpleMailMessage[] messages;
+    
+    @Setup
+    public void setUp() {
+        greenMail = new GreenMail(new ServerSetup(PORT, "localhost", protocol));
+        greenMail.start();
+        
+        perMessageSender = configure(new JavaMailSenderImpl());
+        pooledSender = configure(new PooledJavaMailSender(new SmtpPoolProperties(), new SimpleMeterRegistry()));
+        
+        messages = IntStream.range(0, MESSAGES).mapToObj(i -> {
+            SimpleMailMessage message = new SimpleMailMessage();
+            message.setFrom("noreply@lovelace.test");
+            message.setTo("user" + i + "@example.com");
+            message.setSubject("Verify your email");
+            message.setText("Open http://localhost:4200/verify-email?token=" + i + " to verify your email.");
+            return message;
+        }).toArray(SimpleMailMessage[]::new);
+    }
+    
+    @TearDown(Level.Iteration)
+    public void purgeMailboxes() throws Exception {
+        greenMail.purgeEmailFromAllMailboxes();
+    }
+    
+    @TearDown
+    public void tearDown() {
+        pooledSender.destroy();
+        greenMail.stop();
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void newConnectionPerMessage() {
+        for (SimpleMailMessage message : messages) {
+            perMessageSender.send(message);
+        }
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void pooledConnectionPerMessage() {
+        for (SimpleMailMessage message : messages) {
+            pooledSender.send(message);
+        }
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void pooledConnectionBatch() {
+        pooledSender.send(messages);
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void outboxWorkerOneDomain(OutboxState outbox) throws InterruptedException {
+        outbox.fill();
+        outbox.worker.poll();
+        while (outbox.sent.get() < MESSAGES) {
+            Thread.sleep(1);
+            outbox.worker.poll();
+        }
+    }
+    
+    /**
+     * Outbox worker sending with the pooled sender, limited to {@code domainBatchSize} emails per domain interval
+     */
+    @State(Scope.Benchmark)
+    public static class OutboxState {
+        
+        @Param({"1", "5", "20"})
+        public int domainBatchSize;
+        
+        private final InMemoryOutbox outbox = new InMemoryOutbox();
+        private final AtomicInteger sent = outbox.sent;
+        private EmailOutboxWorker worker;
+        
+        @Setup
+        public void setUp(SmtpThroughputBenchmark benchmark) {
+            EmailOutboxProperties properties = new EmailOutboxProperties();
+            properties.setWorkers(1);
+            properties.setBatchSize(MESSAGES);
+            properties.setDomainInterval(DOMAIN_INTERVAL);
+            properties.setDomainBatchSize(domainBatchSize);
+            worker = new EmailOutboxWorker(outbox, benchmark.pooledSender, properties,
+                    new SimpleMeterRegistry(), "noreply@lovelace.test");
+        }
+        
+        void fill() {
+            sent.set(0);
+            for (int i = 0; i < MESSAGES; i++) {
+                String to = "user" + i + "@example.com";
+                outbox.pending.add(OutboxEmail.builder()
+                        .id(String.valueOf(i))
+                        .to(to)
+                        .domain(OutboxEmail.domainOf(to))
+                        .subject("Verify your email")
+                        .body("Open http://localhost:4200/verify-email?token=" + i + " to verify your email.")
+                        .status(OutboxEmail.Status.PENDING)
+                        .attempts(1)
+                        .createdAt(LocalDateTime.now())
+                        .build());
+            }
+        }
+        
+        @TearDown
+        public void tearDown() throws InterruptedException {
+            worker.shutdown();
+        }
+    }
+    
+    /**
+     * Outbox kept in memory, claiming like the MongoDB query does
+     */
+    private static class InMemoryOutbox extends EmailOutboxService {
+        
+        private final ConcurrentLinkedQueue<OutboxEmail> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger sent = new AtomicInteger();
+        
+        InMemoryOutbox() {
+            super(null);
+        }
+        
+        @Override
+        public OutboxEmail claimNext(Duration lease, Collection<String> excludedDomains) {
+            Iterator<OutboxEmail> iterator = pending.iterator();
+            while (iterator.hasNext()) {
+                OutboxEmail email = iterator.next();
+                if (!excludedDomains.contains(email.getDomain())) {
+                    iterator.remove();
+                    return email;
+                }
+            }
+            return null;
+        }
+        
+        @Override
+        public void markSent(String id) {
+            sent.incrementAndGet();
+        }
+        
+        @Override
+        public void markRetry(String id, LocalDateTime nextAttemptAt, String error) {
+            // Counted as done so a failing run ends; GreenMail accepts every message
+            sent.incrementAndGet();
+        }
+        
+        @Override
+        public void defer(String id, LocalDateTime nextAttemptAt) {
+            throw new IllegalStateException("Email " + id + " was claimed while its domain was throttled");
+        }
+        
+        @Override
+        public void markDead(String id, String error) {
+            sent.incrementAndGet();
+        }
+        
+        @Override
+        public long countPending() {
+            return pending.size();
+        }
+    }
+    
+    private <T extends JavaMailSenderImpl> T configure(T sender) {
+        sender.setHost("localhost");
+        sender.setPort(PORT);
+        sender.setProtocol(protocol);
+        // GreenMail uses a self-signed certificate
+        sender.getJavaMailProperties().put("mail.smtps.ssl.trust", "*");
+        sender.getJavaMailProperties().put("mail.smtps.ssl.checkserveridentity", "false");
+        return sender;
+    }
+    
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SmtpThroughputBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,124 @@
+package com.aloneinabyss.lovelace.benchmark;
+
+import com.aloneinabyss.lovelace.auth.model.User;
+import com.aloneinabyss.lovelace.auth.repository.UserAuthView;
+import com.aloneinabyss.lovelace.auth.repository.UserAuthViewCodec;
+import com.aloneinabyss.lovelace.auth.repository.UserCodec;
+import com.mongodb.MongoClientSettings;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares decoding a raw user document with the default path (driver DocumentCodec followed by
+ * MappingMongoConverter) against the hand-written codecs.
+ * Allocation rate per operation is reported by the GC profiler ("gc.alloc.rate.norm").
+ * <p>
+ * Run with {@code mvn -Pbenchmark test-compile exec:java -Dbenchmark=UserDecodeBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserDecodeBenchmark {
+    
+    private final DecoderContext decoderContext = DecoderContext.builder().build();
+    private final DocumentCodec documentCodec = new DocumentCodec();
+    private final UserCodec userCodec = new UserCodec();
+    private final UserAuthViewCodec userAuthViewCodec = new UserAuthViewCodec();
+    
+    private MappingMongoConverter converter;
+    private byte[] userDocument;
+    
+    @Setup
+    public void setUp() {
+        MongoCustomConversions conversions = new MongoCustomConversions(Collections.emptyList());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        
+        LocalDateTime now = LocalDateTime.now();
+        User user = User.builder()
+                .id("64b7f0c2e4b0a1a2b3c4d5e6")
+                .username("benchmark")
+                .email("benchmark@example.com")
+                .emailVerified(true)
+                .password("{bcrypt}$2a$10$7EqJtq98hPqEX7fNZaFWoOhi5BWX4Z5UBZ5v2f0Y1Zb6rX2Yz3Q0a")
+                .passwordChangedAt(now.minusDays(3))
+                .credentialVersion(2)
+                .roles(Set.of("ROLE_USER"))
+                .enabled(true)
+                .createdAt(now.minusDays(30))
+                .updatedAt(now)
+                .build();
+        
+        // Serialize the document exactly as Spring Data stores it
+        Document document = new Document();
+        converter.write(user, document);
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        MongoClientSettings.getDefaultCodecRegistry().get(Document.class)
+                .encode(new BsonBinaryWriter(buffer), document, EncoderContext.builder().build());
+        userDocument = buffer.toByteArray();
+    }
+    
+    @Benchmark
+    public User mappingMongoConverter() {
+        Document document = documentCodec.decode(reader(), decoderContext);
+        return converter.read(User.class, document);
+    }
+    
+    @Benchmark
+    public User userCodec() {
+        return userCodec.decode(reader(), decoderContext);
+    }
+    
+    @Benchmark
+    public UserAuthView userAuthViewCodec() {
+        return userAuthViewCodec.decode(reader(), decoderContext);
+    }
+    
+    private BsonBinaryReader reader() {
+        return new BsonBinaryReader(ByteBuffer.wrap(userDocument));
+    }
+    
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(UserDecodeBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
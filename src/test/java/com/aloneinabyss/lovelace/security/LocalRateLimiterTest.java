@@ -0,0 +1,55 @@
+package com.aloneinabyss.lovelace.security;
+
+import com.aloneinabyss.lovelace.config.RateLimitProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Remembers empty buckets until they refill, within a bounded number of entries.
+ */
+class LocalRateLimiterTest {
+    
+    private final RateLimitProperties properties = new RateLimitProperties();
+    
+    @Test
+    void unknownBucketIsNotBlocked() {
+        LocalRateLimiter limiter = new LocalRateLimiter(properties);
+        
+        assertThat(limiter.blockedFor("rate-limit:login:ip:10.0.0.1", 1_000)).isZero();
+    }
+    
+    @Test
+    void blocksBucketUntilItRefills() {
+        LocalRateLimiter limiter = new LocalRateLimiter(properties);
+        limiter.block("rate-limit:login:ip:10.0.0.1", 5_000);
+        
+        assertThat(limiter.blockedFor("rate-limit:login:ip:10.0.0.1", 1_000)).isEqualTo(4_000);
+        assertThat(limiter.blockedFor("rate-limit:login:ip:10.0.0.1", 4_999)).isEqualTo(1);
+        assertThat(limiter.blockedFor("rate-limit:login:ip:10.0.0.1", 5_000)).isZero();
+        assertThat(limiter.blockedFor("rate-limit:login:ip:10.0.0.2", 1_000)).isZero();
+    }
+    
+    @Test
+    void keepsLaterOfTwoDeadlines() {
+        LocalRateLimiter limiter = new LocalRateLimiter(properties);
+        limiter.block("rate-limit:login:ip:10.0.0.1", 5_000);
+        limiter.block("rate-limit:login:ip:10.0.0.1", 3_000);
+        
+        assertThat(limiter.blockedFor("rate-limit:login:ip:10.0.0.1", 1_000)).isEqualTo(4_000);
+    }
+    
+    @Test
+    void forgetsLeastRecentlyUsedBucketsBeyondMaximum() {
+        properties.setLocalMaxEntries(64);
+        LocalRateLimiter limiter = new LocalRateLimiter(properties);
+        IntStream.range(0, 1_000).forEach(i -> limiter.block("rate-limit:login:ip:10.0." + i / 256 + "." + i % 256, 5_000));
+        
+        long remembered = IntStream.range(0, 1_000)
+                .filter(i -> limiter.blockedFor("rate-limit:login:ip:10.0." + i / 256 + "." + i % 256, 1_000) > 0)
+                .count();
+        assertThat(remembered).isPositive().isLessThanOrEqualTo(64);
+    }
+}
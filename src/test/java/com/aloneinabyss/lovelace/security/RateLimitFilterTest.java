@@ -0,0 +1,188 @@
+package com.aloneinabyss.lovelace.security;
+
+import com.aloneinabyss.lovelace.config.RateLimitProperties;
+import com.aloneinabyss.lovelace.security.service.RateLimitService;
+import com.aloneinabyss.lovelace.shared.service.MessageService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Extracts the identity from the request body and turns rate-limit decisions into responses;
+ * the rate-limit service is mocked.
+ */
+class RateLimitFilterTest {
+    
+    private final RateLimitProperties properties = new RateLimitProperties();
+    private final RateLimitService rateLimitService = mock(RateLimitService.class);
+    private final MessageService messageService = mock(MessageService.class);
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    
+    private RateLimitFilter filter;
+    
+    @BeforeEach
+    void setUp() {
+        RateLimitProperties.Route login = new RateLimitProperties.Route();
+        login.setPath("/api/auth/login");
+        login.setIdentityField("identity");
+        properties.getRoutes().put("login", login);
+        
+        when(messageService.getMessage(anyString())).thenReturn("message");
+        when(rateLimitService.check(any(), any(), any(), any()))
+                .thenReturn(Optional.of(new RateLimitService.Decision(true, 5, 4, 12, 0)));
+        filter = new RateLimitFilter(properties, rateLimitService, objectMapper, messageService);
+    }
+    
+    @Test
+    void limitsByIdentityAndReplaysBody() throws Exception {
+        String body = "{\"identity\":\"ada@example.com\",\"password\":\"secret\"}";
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        
+        filter.doFilter(login(body), response, chain);
+        
+        verify(rateLimitService).check(eq("login"), any(), eq("203.0.113.7"), eq("ada@example.com"));
+        assertThat(response.getHeader("RateLimit-Limit")).isEqualTo("5");
+        assertThat(response.getHeader("RateLimit-Remaining")).isEqualTo("4");
+        assertThat(response.getHeader("RateLimit-Reset")).isEqualTo("12");
+        
+        HttpServletRequest forwarded = (HttpServletRequest) chain.getRequest();
+        assertThat(new String(forwarded.getInputStream().readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(body);
+        assertThat(forwarded.getInputStream().isFinished()).isTrue();
+    }
+    
+    @Test
+    void limitsBodiesWithoutIdentityInSharedBucket() throws Exception {
+        filter.doFilter(login("{\"password\":\"secret\"}"), new MockHttpServletResponse(), new MockFilterChain());
+        filter.doFilter(login("not json"), new MockHttpServletResponse(), new MockFilterChain());
+        filter.doFilter(login("{\"identity\":42}"), new MockHttpServletResponse(), new MockFilterChain());
+        
+        verify(rateLimitService, times(3)).check(eq("login"), any(), eq("203.0.113.7"), eq(""));
+    }
+    
+    @Test
+    void rejectsBodyTooLargeToInspect() throws Exception {
+        String padding = "x".repeat(10 * 1024);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        
+        filter.doFilter(login("{\"padding\":\"" + padding + "\",\"identity\":\"ada@example.com\"}"), response, chain);
+        
+        assertThat(response.getStatus()).isEqualTo(413);
+        assertThat(response.getContentAsString()).contains("PAYLOAD_TOO_LARGE");
+        assertThat(chain.getRequest()).isNull();
+        verify(rateLimitService, never()).check(any(), any(), any(), any());
+    }
+    
+    @Test
+    void rejectsDeniedRequestWithRetryAfter() throws Exception {
+        when(rateLimitService.check(any(), any(), any(), any()))
+                .thenReturn(Optional.of(new RateLimitService.Decision(false, 5, 0, 60, 12)));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        
+        filter.doFilter(login("{\"identity\":\"ada@example.com\"}"), response, chain);
+        
+        assertThat(response.getStatus()).isEqualTo(429);
+        assertThat(response.getHeader("Retry-After")).isEqualTo("12");
+        assertThat(response.getContentAsString()).contains("TOO_MANY_REQUESTS");
+        assertThat(chain.getRequest()).isNull();
+    }
+    
+    @Test
+    void letsRequestThroughWhenRedisIsUnavailable() throws Exception {
+        when(rateLimitService.check(any(), any(), any(), any())).thenReturn(Optional.empty());
+        MockFilterChain chain = new MockFilterChain();
+        
+        filter.doFilter(login("{\"identity\":\"ada@example.com\"}"), new MockHttpServletResponse(), chain);
+        
+        assertThat(chain.getRequest()).isNotNull();
+    }
+    
+    @Test
+    void limitsEncodedSpellingsOfRoutePath() throws Exception {
+        MockHttpServletRequest encoded = login("{\"identity\":\"ada@example.com\"}");
+        encoded.setRequestURI("/api/auth/%6Cogin");
+        MockHttpServletRequest withPathParameter = login("{\"identity\":\"ada@example.com\"}");
+        withPathParameter.setRequestURI("/api/auth/login;jsessionid=1");
+        
+        filter.doFilter(encoded, new MockHttpServletResponse(), new MockFilterChain());
+        filter.doFilter(withPathParameter, new MockHttpServletResponse(), new MockFilterChain());
+        
+        verify(rateLimitService, times(2)).check(eq("login"), any(), eq("203.0.113.7"), eq("ada@example.com"));
+    }
+    
+    @Test
+    void skipsOtherRoutesAndMethods() throws Exception {
+        MockHttpServletRequest get = login("");
+        get.setMethod("GET");
+        MockHttpServletRequest other = login("{}");
+        other.setRequestURI("/api/auth/refresh");
+        
+        filter.doFilter(get, new MockHttpServletResponse(), new MockFilterChain());
+        filter.doFilter(other, new MockHttpServletResponse(), new MockFilterChain());
+        
+        verify(rateLimitService, never()).check(any(), any(), any(), any());
+    }
+    
+    @Test
+    void replayedBodyNotifiesReadListener() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(login("{\"identity\":\"ada@example.com\"}"), new MockHttpServletResponse(), chain);
+        ServletInputStream input = chain.getRequest().getInputStream();
+        List<String> events = new ArrayList<>();
+        
+        input.setReadListener(new ReadListener() {
+            @Override
+            public void onDataAvailable() throws IOException {
+                events.add("data");
+                while (input.isReady() && !input.isFinished()) {
+                    input.read();
+                }
+            }
+            
+            @Override
+            public void onAllDataRead() {
+                events.add("done");
+            }
+            
+            @Override
+            public void onError(Throwable t) {
+                events.add("error");
+            }
+        });
+        
+        assertThat(events).containsExactly("data", "done");
+    }
+    
+    private static MockHttpServletRequest login(String body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/auth/login");
+        request.setRemoteAddr("203.0.113.7");
+        request.setContentType("application/json");
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+}
@@ -0,0 +1,95 @@
+package com.aloneinabyss.lovelace.security.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the token-bucket script against a real Redis; skipped when Docker is not available.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class RateLimitScriptTest {
+    
+    @Container
+    static GenericContainer<?> redis = new GenericContainer<>(DockerImageName.parse("redis:latest")).withExposedPorts(6379);
+    
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SCRIPT =
+            RedisScript.of(new ClassPathResource("redis/rate_limit.lua"), List.class);
+    
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate redisTemplate;
+    
+    @BeforeEach
+    void setUp() {
+        connectionFactory = new LettuceConnectionFactory(redis.getHost(), redis.getMappedPort(6379));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate.getConnectionFactory().getConnection().serverCommands().flushAll();
+    }
+    
+    @AfterEach
+    void tearDown() {
+        connectionFactory.destroy();
+    }
+    
+    @Test
+    void takesTokensUntilEmptyThenReportsWait() {
+        assertThat(take("ip", 3, 3_000)).startsWith(1L, 1L, 2L);
+        assertThat(take("ip", 3, 3_000)).startsWith(1L, 1L, 1L);
+        assertThat(take("ip", 3, 3_000)).startsWith(1L, 1L, 0L);
+        
+        List<Long> denied = take("ip", 3, 3_000);
+        assertThat(denied).startsWith(0L, 1L, 0L);
+        // One token refills every refill period / capacity
+        assertThat(denied.get(3)).isBetween(2_900L, 3_000L);
+        assertThat(denied.get(4)).isBetween(1L, 1_000L);
+        assertThat(redisTemplate.getExpire("ip", TimeUnit.MILLISECONDS)).isBetween(1L, 3_000L);
+    }
+    
+    @Test
+    void refillsContinuously() throws InterruptedException {
+        take("ip", 2, 200);
+        take("ip", 2, 200);
+        assertThat(take("ip", 2, 200).get(0)).isZero();
+        
+        Thread.sleep(150);
+        
+        assertThat(take("ip", 2, 200).get(0)).isEqualTo(1L);
+    }
+    
+    @Test
+    void takesFromNoBucketWhenAnyIsEmpty() {
+        assertThat(execute(List.of("ip", "id"), "10", "60000", "1", "60000")).startsWith(1L, 2L, 0L);
+        
+        List<Long> denied = execute(List.of("ip", "id"), "10", "60000", "1", "60000");
+        
+        assertThat(denied).startsWith(0L, 2L, 0L);
+        assertThat(denied.get(4)).isZero();
+        assertThat(denied.get(5)).isBetween(59_000L, 60_000L);
+        assertThat(Double.parseDouble((String) redisTemplate.opsForHash().get("ip", "tokens"))).isBetween(9.0, 9.1);
+    }
+    
+    private List<Long> take(String key, long capacity, long refillPeriod) {
+        return execute(List.of(key), String.valueOf(capacity), String.valueOf(refillPeriod));
+    }
+    
+    @SuppressWarnings("unchecked")
+    private List<Long> execute(List<String> keys, String... args) {
+        return redisTemplate.execute(SCRIPT, keys, (Object[]) args);
+    }
+}
@@ -0,0 +1,116 @@
+package com.aloneinabyss.lovelace.security.service;
+
+import com.aloneinabyss.lovelace.config.RateLimitProperties;
+import com.aloneinabyss.lovelace.security.LocalRateLimiter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Maps results of the rate-limit script to decisions and remembers empty buckets locally;
+ * Redis is mocked. The script itself is covered by {@link RateLimitScriptTest}.
+ */
+class RateLimitServiceTest {
+    
+    @SuppressWarnings("unchecked")
+    private final RedisTemplate<String, String> redisTemplate = mock(RedisTemplate.class);
+    private final RateLimitProperties properties = new RateLimitProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RateLimitProperties.Route route = new RateLimitProperties.Route();
+    private final List<List<String>> calls = new ArrayList<>();
+    
+    private RateLimitService rateLimitService;
+    
+    @BeforeEach
+    void setUp() {
+        route.setIpCapacity(20);
+        route.setIdentityCapacity(5);
+        route.setRefillPeriod(60_000);
+        rateLimitService = new RateLimitService(redisTemplate, new LocalRateLimiter(properties), meterRegistry);
+    }
+    
+    @Test
+    void allowsRequestAndReportsMostDepletedBucket() {
+        scriptReturns(1L, 2L, 3L, 24_000L, 0L, 0L);
+        
+        Optional<RateLimitService.Decision> decision = rateLimitService.check("login", route, "203.0.113.7", "ada@example.com");
+        
+        assertThat(decision).get().satisfies(result -> {
+            assertThat(result.isAllowed()).isTrue();
+            assertThat(result.getLimit()).isEqualTo(5);
+            assertThat(result.getRemaining()).isEqualTo(3);
+            assertThat(result.getResetSeconds()).isEqualTo(24);
+            assertThat(result.getRetryAfterSeconds()).isZero();
+        });
+        assertThat(calls.get(0)).hasSize(2).first().isEqualTo("rate-limit:login:ip:203.0.113.7");
+    }
+    
+    @Test
+    void normalizesIdentityBeforeHashingIt() {
+        scriptReturns(1L, 1L, 4L, 12_000L, 0L, 0L);
+        
+        rateLimitService.check("login", route, "203.0.113.7", " Ada@Example.com");
+        rateLimitService.check("login", route, "198.51.100.1", "ada@example.com");
+        
+        assertThat(calls.get(0).get(1)).startsWith("rate-limit:login:id:").isEqualTo(calls.get(1).get(1));
+        assertThat(calls.get(0).get(1)).doesNotContain("ada");
+    }
+    
+    @Test
+    void limitsByIpOnlyWithoutIdentity() {
+        scriptReturns(1L, 1L, 19L, 3_000L, 0L);
+        
+        rateLimitService.check("login", route, "203.0.113.7", null);
+        
+        assertThat(calls.get(0)).containsExactly("rate-limit:login:ip:203.0.113.7");
+    }
+    
+    @Test
+    void deniesAndBlocksEmptyBucketLocallyUntilItRefills() {
+        scriptReturns(0L, 2L, 0L, 60_000L, 0L, 11_500L);
+        
+        RateLimitService.Decision denied = rateLimitService.check("login", route, "203.0.113.7", "ada@example.com").orElseThrow();
+        RateLimitService.Decision again = rateLimitService.check("login", route, "198.51.100.1", "ada@example.com").orElseThrow();
+        
+        assertThat(denied.isAllowed()).isFalse();
+        assertThat(denied.getRetryAfterSeconds()).isEqualTo(12);
+        assertThat(again.isAllowed()).isFalse();
+        assertThat(again.getLimit()).isEqualTo(5);
+        assertThat(again.getRetryAfterSeconds()).isBetween(1L, 12L);
+        verify(redisTemplate, times(1)).execute(any(RedisScript.class), anyList(), any(Object[].class));
+        assertThat(meterRegistry.get("rate.limit.requests").tag("result", "denied").tag("source", "local").counter().count())
+                .isEqualTo(1);
+    }
+    
+    @Test
+    void letsRequestThroughWhenRedisFails() {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenThrow(new RedisConnectionFailureException("down"));
+        
+        assertThat(rateLimitService.check("login", route, "203.0.113.7", "ada@example.com")).isEmpty();
+        assertThat(meterRegistry.get("rate.limit.requests").tag("result", "unavailable").counter().count()).isEqualTo(1);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private void scriptReturns(Long... result) {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenAnswer(invocation -> {
+            calls.add(List.copyOf((List<String>) invocation.getArgument(1)));
+            return List.of(result);
+        });
+    }
+}
@@ -0,0 +1,188 @@
+package com.aloneinabyss.lovelace.security.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the single-use scripts of JWT and opaque refresh tokens against a real Redis and checks
+ * their status codes: 1 rotated, 2 rotated within the grace window, 0 reused (the session is
+ * revoked), -1 session already revoked. Skipped when Docker is not available.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class RefreshTokenScriptTest {
+    
+    @Container
+    static GenericContainer<?> redis = new GenericContainer<>(DockerImageName.parse("redis:latest")).withExposedPorts(6379);
+    
+    private static final RedisScript<Long> CHECK_AND_REVOKE =
+            RedisScript.of(new ClassPathResource("redis/check_and_revoke.lua"), Long.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> OPAQUE_ROTATE =
+            RedisScript.of(new ClassPathResource("redis/opaque_refresh_rotate.lua"), List.class);
+    
+    private static final String BUCKET = TokenBlacklistService.BUCKET_PREFIX + "1";
+    private static final String FAMILY = TokenBlacklistService.FAMILY_PREFIX + "sid-1";
+    private static final String LEGACY = TokenBlacklistService.LEGACY_BLACKLIST_PREFIX + "token";
+    private static final String GRACE = TokenBlacklistService.GRACE_PREFIX + "jti-1";
+    
+    private static final String OPAQUE = OpaqueRefreshTokenService.KEY_PREFIX + "digest-1";
+    private static final String OPAQUE_NEXT = OpaqueRefreshTokenService.KEY_PREFIX + "digest-2";
+    private static final String OPAQUE_GRACE = TokenBlacklistService.GRACE_PREFIX + "digest-1";
+    
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate redisTemplate;
+    
+    @BeforeEach
+    void setUp() {
+        connectionFactory = new LettuceConnectionFactory(redis.getHost(), redis.getMappedPort(6379));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate.getConnectionFactory().getConnection().serverCommands().flushAll();
+    }
+    
+    @AfterEach
+    void tearDown() {
+        connectionFactory.destroy();
+    }
+    
+    @Test
+    void revokesTokenOnFirstUseAndOpensGraceWindow() {
+        assertThat(checkAndRevoke("60000", "0", "5000")).isEqualTo(1);
+        
+        assertThat(redisTemplate.opsForSet().isMember(BUCKET, "jti-1")).isTrue();
+        assertThat(redisTemplate.opsForValue().get(GRACE)).isEmpty();
+        assertThat(redisTemplate.hasKey(FAMILY)).isFalse();
+    }
+    
+    @Test
+    void reuseWithinGraceWindowIsReportedAsRecentlyRotated() {
+        checkAndRevoke("60000", "0", "5000");
+        
+        assertThat(checkAndRevoke("60000", "0", "5000")).isEqualTo(2);
+        assertThat(redisTemplate.hasKey(FAMILY)).isFalse();
+    }
+    
+    @Test
+    void reuseAfterGraceWindowRevokesSession() throws InterruptedException {
+        checkAndRevoke("60000", "0", "100");
+        Thread.sleep(200);
+        
+        assertThat(checkAndRevoke("60000", "0", "100")).isZero();
+        assertThat(redisTemplate.getExpire(FAMILY)).isBetween(1L, 60L);
+        assertThat(checkAndRevoke("60000", "0", "100")).isEqualTo(-1);
+    }
+    
+    @Test
+    void reuseWithoutGraceWindowRevokesSession() {
+        checkAndRevoke("60000", "0", "0");
+        
+        assertThat(checkAndRevoke("60000", "0", "0")).isZero();
+        assertThat(redisTemplate.hasKey(FAMILY)).isTrue();
+        assertThat(redisTemplate.hasKey(GRACE)).isFalse();
+    }
+    
+    @Test
+    void reuseOfTokenWithoutSessionRevokesNothingElse() {
+        checkAndRevoke("0", "0", "0");
+        
+        assertThat(checkAndRevoke("0", "0", "0")).isZero();
+        assertThat(redisTemplate.hasKey(FAMILY)).isFalse();
+    }
+    
+    @Test
+    void tokenOfRevokedSessionIsRejectedWithoutBeingUsed() {
+        redisTemplate.opsForValue().set(FAMILY, "1");
+        
+        assertThat(checkAndRevoke("60000", "0", "5000")).isEqualTo(-1);
+        assertThat(redisTemplate.hasKey(BUCKET)).isFalse();
+    }
+    
+    @Test
+    void legacyBlacklistEntryCountsAsUse() {
+        redisTemplate.opsForValue().set(LEGACY, "1");
+        
+        assertThat(checkAndRevoke("60000", "1", "0")).isZero();
+        assertThat(redisTemplate.hasKey(FAMILY)).isTrue();
+    }
+    
+    @Test
+    void unknownOpaqueTokenIsRejected() {
+        assertThat(rotate("5000")).containsExactly(-2L);
+        assertThat(redisTemplate.hasKey(OPAQUE_NEXT)).isFalse();
+    }
+    
+    @Test
+    void rotatesOpaqueTokenWithItsSessionMetadata() {
+        issueOpaque();
+        
+        List<Object> result = rotate("5000");
+        
+        assertThat(result).containsExactly(1L, "user-1", "ada", "ROLE_USER", "sid-1", "3", "1000", "2000");
+        assertThat(redisTemplate.<String, String>opsForHash().entries(OPAQUE_NEXT)).containsAllEntriesOf(Map.of(
+                "userId", "user-1", "sid", "sid-1", "cv", "3", "iat", "5000", "exp", "9000000000000"));
+        assertThat(redisTemplate.opsForHash().get(OPAQUE, "rotatedAt")).isEqualTo("5000");
+        assertThat(redisTemplate.opsForValue().get(OPAQUE_GRACE)).isEmpty();
+    }
+    
+    @Test
+    void reuseOfOpaqueTokenWithinGraceWindowIsReportedAsRecentlyRotated() {
+        issueOpaque();
+        rotate("5000");
+        
+        assertThat(rotate("5000").get(0)).isEqualTo(2L);
+        assertThat(redisTemplate.hasKey(FAMILY)).isFalse();
+    }
+    
+    @Test
+    void reuseOfOpaqueTokenAfterGraceWindowRevokesSession() {
+        issueOpaque();
+        rotate("0");
+        
+        assertThat(rotate("0").get(0)).isEqualTo(0L);
+        assertThat(redisTemplate.hasKey(FAMILY)).isTrue();
+        assertThat(rotate("0").get(0)).isEqualTo(-1L);
+    }
+    
+    @Test
+    void opaqueTokenOfRevokedSessionIsRejectedWithoutBeingRotated() {
+        issueOpaque();
+        redisTemplate.opsForValue().set(FAMILY, "1");
+        
+        assertThat(rotate("5000").get(0)).isEqualTo(-1L);
+        assertThat(redisTemplate.hasKey(OPAQUE_NEXT)).isFalse();
+        assertThat(redisTemplate.opsForHash().hasKey(OPAQUE, "rotatedAt")).isFalse();
+    }
+    
+    private Long checkAndRevoke(String familyTtl, String legacy, String graceWindow) {
+        long bucketExpiry = System.currentTimeMillis() / 1000 + 3600;
+        return redisTemplate.execute(CHECK_AND_REVOKE, List.of(BUCKET, FAMILY, LEGACY, GRACE),
+                "jti-1", String.valueOf(bucketExpiry), familyTtl, legacy, graceWindow);
+    }
+    
+    private void issueOpaque() {
+        redisTemplate.opsForHash().putAll(OPAQUE, Map.of(
+                "userId", "user-1", "username", "ada", "roles", "ROLE_USER", "sid", "sid-1",
+                "cv", "3", "iat", "1000", "exp", "2000"));
+    }
+    
+    @SuppressWarnings("unchecked")
+    private List<Object> rotate(String graceWindow) {
+        return redisTemplate.execute(OPAQUE_ROTATE, List.of(OPAQUE, OPAQUE_NEXT, OPAQUE_GRACE),
+                TokenBlacklistService.FAMILY_PREFIX, "5000", "9000000000000", graceWindow, "60000");
+    }
+}
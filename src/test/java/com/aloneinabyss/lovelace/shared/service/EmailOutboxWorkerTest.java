@@ -0,0 +1,212 @@
+package com.aloneinabyss.lovelace.shared.service;
+
+import com.aloneinabyss.lovelace.config.EmailOutboxProperties;
+import com.aloneinabyss.lovelace.shared.model.OutboxEmail;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Delivers outbox emails to a local GreenMail SMTP server; the outbox persistence is mocked.
+ */
+class EmailOutboxWorkerTest {
+    
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+    
+    private final EmailOutboxService emailOutboxService = mock(EmailOutboxService.class);
+    private final EmailOutboxProperties properties = new EmailOutboxProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    
+    private EmailOutboxWorker worker;
+    
+    @BeforeEach
+    void setUp() {
+        properties.setWorkers(2);
+        properties.setMaxAttempts(3);
+        properties.setInitialBackoff(1_000);
+        properties.setMaxBackoff(10_000);
+        properties.setDomainInterval(60_000);
+        properties.setDomainBatchSize(1);
+    }
+    
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        worker.shutdown();
+    }
+    
+    @Test
+    void deliversClaimedEmailAndMarksItSent() throws Exception {
+        worker = newWorker(ServerSetupTest.SMTP.getPort());
+        when(emailOutboxService.claimNext(any(), any())).thenReturn(email("1", "ada@example.com", 1), (OutboxEmail) null);
+        
+        worker.poll();
+        
+        assertThat(greenMail.waitForIncomingEmail(5_000, 1)).isTrue();
+        MimeMessage received = greenMail.getReceivedMessages()[0];
+        assertThat(received.getSubject()).isEqualTo("Subject 1");
+        assertThat(GreenMailUtil.getBody(received)).contains("Body 1");
+        assertThat(received.getFrom()[0].toString()).isEqualTo("noreply@lovelace.test");
+        
+        verify(emailOutboxService, timeout(5_000)).markSent("1");
+        assertThat(meterRegistry.get("email.outbox.send").tag("result", "sent").timer().count()).isEqualTo(1);
+    }
+    
+    @Test
+    void schedulesRetryWithBackoffWhenSmtpFails() {
+        worker = newWorker(closedPort());
+        when(emailOutboxService.claimNext(any(), any())).thenReturn(email("1", "ada@example.com", 1), (OutboxEmail) null);
+        LocalDateTime before = LocalDateTime.now();
+        
+        worker.poll();
+        
+        verify(emailOutboxService, timeout(10_000)).markRetry(
+                eq("1"),
+                argThat(nextAttemptAt -> !nextAttemptAt.isBefore(before.plus(Duration.ofMillis(500)))),
+                anyString());
+        verify(emailOutboxService, never()).markDead(anyString(), anyString());
+    }
+    
+    @Test
+    void deadLettersEmailAfterLastAttempt() {
+        worker = newWorker(closedPort());
+        when(emailOutboxService.claimNext(any(), any())).thenReturn(email("1", "ada@example.com", 3), (OutboxEmail) null);
+        
+        worker.poll();
+        
+        verify(emailOutboxService, timeout(10_000)).markDead(eq("1"), anyString());
+        verify(emailOutboxService, never()).markRetry(anyString(), any(), anyString());
+        assertThat(meterRegistry.get("email.outbox.dead").counter().count()).isEqualTo(1);
+    }
+    
+    @Test
+    void leavesEmailsOfThrottledDomainInOutbox() throws Exception {
+        worker = newWorker(ServerSetupTest.SMTP.getPort());
+        List<OutboxEmail> outbox = outbox(
+                email("1", "ada@example.com", 1), email("2", "grace@EXAMPLE.com", 1), email("3", "alan@other.com", 1));
+        
+        worker.poll();
+        
+        verify(emailOutboxService, timeout(5_000)).markSent("1");
+        verify(emailOutboxService, timeout(5_000)).markSent("3");
+        assertThat(greenMail.waitForIncomingEmail(5_000, 2)).isTrue();
+        assertThat(greenMail.getReceivedMessages()).hasSize(2);
+        assertThat(outbox).extracting(OutboxEmail::getId).containsExactly("2");
+        verify(emailOutboxService, never()).defer(anyString(), any());
+    }
+    
+    @Test
+    void sendsUpToDomainBatchSizeEmailsToSameDomainPerInterval() throws Exception {
+        properties.setDomainBatchSize(2);
+        worker = newWorker(ServerSetupTest.SMTP.getPort());
+        List<OutboxEmail> outbox = outbox(
+                email("1", "ada@example.com", 1), email("2", "grace@example.com", 1), email("3", "alan@example.com", 1));
+        
+        worker.poll();
+        
+        verify(emailOutboxService, timeout(5_000)).markSent("1");
+        verify(emailOutboxService, timeout(5_000)).markSent("2");
+        assertThat(greenMail.waitForIncomingEmail(5_000, 2)).isTrue();
+        assertThat(greenMail.getReceivedMessages()).hasSize(2);
+        assertThat(outbox).extracting(OutboxEmail::getId).containsExactly("3");
+        verify(emailOutboxService, never()).defer(anyString(), any());
+    }
+    
+    @Test
+    void defersEmailQueuedWithoutDomainWhenDomainIsThrottled() throws Exception {
+        worker = newWorker(ServerSetupTest.SMTP.getPort());
+        OutboxEmail legacy = email("2", "grace@example.com", 1);
+        legacy.setDomain(null);
+        outbox(email("1", "ada@example.com", 1), legacy);
+        
+        worker.poll();
+        
+        verify(emailOutboxService).defer(eq("2"), any());
+        verify(emailOutboxService, timeout(5_000)).markSent("1");
+        assertThat(greenMail.waitForIncomingEmail(5_000, 1)).isTrue();
+        assertThat(greenMail.getReceivedMessages()).hasSize(1);
+    }
+    
+    @Test
+    void backoffGrowsExponentiallyUpToMaximum() {
+        worker = newWorker(ServerSetupTest.SMTP.getPort());
+        
+        assertThat(worker.backoff(1)).isBetween(Duration.ofMillis(500), Duration.ofMillis(1_000));
+        assertThat(worker.backoff(3)).isBetween(Duration.ofMillis(2_000), Duration.ofMillis(4_000));
+        assertThat(worker.backoff(20)).isBetween(Duration.ofMillis(5_000), Duration.ofMillis(10_000));
+    }
+    
+    private EmailOutboxWorker newWorker(int port) {
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(port);
+        mailSender.getJavaMailProperties().put("mail.smtp.connectiontimeout", "2000");
+        
+        return new EmailOutboxWorker(emailOutboxService, mailSender, properties, meterRegistry, "noreply@lovelace.test");
+    }
+    
+    /**
+     * Serve claims from an in-memory outbox that honours the excluded domains like the real query.
+     */
+    @SuppressWarnings("unchecked")
+    private List<OutboxEmail> outbox(OutboxEmail... emails) {
+        List<OutboxEmail> outbox = new ArrayList<>(List.of(emails));
+        when(emailOutboxService.claimNext(any(), any())).thenAnswer(invocation -> {
+            Collection<String> excludedDomains = invocation.getArgument(1, Collection.class);
+            Optional<OutboxEmail> next = outbox.stream()
+                    .filter(email -> email.getDomain() == null || !excludedDomains.contains(email.getDomain()))
+                    .findFirst();
+            next.ifPresent(outbox::remove);
+            return next.orElse(null);
+        });
+        return outbox;
+    }
+    
+    private static OutboxEmail email(String id, String to, int attempts) {
+        return OutboxEmail.builder()
+                .id(id)
+                .to(to)
+                .domain(OutboxEmail.domainOf(to))
+                .subject("Subject " + id)
+                .body("Body " + id)
+                .status(OutboxEmail.Status.PENDING)
+                .attempts(attempts)
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+    
+    private static int closedPort() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
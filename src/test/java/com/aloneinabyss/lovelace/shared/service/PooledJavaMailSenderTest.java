@@ -0,0 +1,116 @@
+package com.aloneinabyss.lovelace.shared.service;
+
+import com.aloneinabyss.lovelace.config.SmtpPoolProperties;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.mail.SimpleMailMessage;
+
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Sends through a local GreenMail SMTP server and counts the connections the pool opens.
+ */
+class PooledJavaMailSenderTest {
+    
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+    
+    private final SmtpPoolProperties properties = new SmtpPoolProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    
+    private PooledJavaMailSender mailSender;
+    
+    @BeforeEach
+    void setUp() {
+        properties.setMaxConnections(2);
+        properties.setMaxMessagesPerConnection(100);
+        properties.setIdleTimeout(30_000);
+    }
+    
+    @AfterEach
+    void tearDown() {
+        mailSender.destroy();
+    }
+    
+    @Test
+    void reusesConnectionAcrossSends() {
+        mailSender = newMailSender();
+        
+        mailSender.send(message(1));
+        mailSender.send(message(2));
+        mailSender.send(message(3), message(4));
+        
+        assertThat(greenMail.getReceivedMessages()).hasSize(4);
+        assertThat(connectionsCreated()).isEqualTo(1);
+        assertThat(meterRegistry.get("email.smtp.connections.idle").gauge().value()).isEqualTo(1);
+    }
+    
+    @Test
+    void replacesConnectionAfterMessageCap() {
+        properties.setMaxMessagesPerConnection(2);
+        mailSender = newMailSender();
+        
+        mailSender.send(IntStream.rangeClosed(1, 5).mapToObj(PooledJavaMailSenderTest::message)
+                .toArray(SimpleMailMessage[]::new));
+        
+        assertThat(greenMail.getReceivedMessages()).hasSize(5);
+        assertThat(connectionsCreated()).isEqualTo(3);
+    }
+    
+    @Test
+    void closesConnectionsIdleLongerThanTimeout() throws InterruptedException {
+        properties.setIdleTimeout(50);
+        mailSender = newMailSender();
+        
+        mailSender.send(message(1));
+        Thread.sleep(100);
+        mailSender.evictIdleConnections();
+        
+        assertThat(meterRegistry.get("email.smtp.connections.idle").gauge().value()).isZero();
+        
+        mailSender.send(message(2));
+        
+        assertThat(greenMail.getReceivedMessages()).hasSize(2);
+        assertThat(connectionsCreated()).isEqualTo(2);
+    }
+    
+    @Test
+    void retriesOnNewConnectionWhenPooledOneWasClosedByServer() {
+        mailSender = newMailSender();
+        mailSender.send(message(1));
+        
+        // Restarting the server drops the pooled connection
+        greenMail.reset();
+        mailSender.send(message(2));
+        
+        assertThat(greenMail.getReceivedMessages()).hasSize(1);
+        assertThat(connectionsCreated()).isEqualTo(2);
+    }
+    
+    private PooledJavaMailSender newMailSender() {
+        PooledJavaMailSender sender = new PooledJavaMailSender(properties, meterRegistry);
+        sender.setHost("localhost");
+        sender.setPort(ServerSetupTest.SMTP.getPort());
+        return sender;
+    }
+    
+    private double connectionsCreated() {
+        return meterRegistry.get("email.smtp.connections.created").counter().count();
+    }
+    
+    private static SimpleMailMessage message(int number) {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setFrom("noreply@lovelace.test");
+        message.setTo("user" + number + "@example.com");
+        message.setSubject("Subject " + number);
+        message.setText("Body " + number);
+        return message;
+    }
+}